@@ -1,55 +1,69 @@
-
-
 import java.io.*;
+import org.huffman.BitReader;
 
 public class BitInputStream implements AutoCloseable
 {
-  private byte[] bytes;
-  private int index;
+  private final BitReader in;
 
   public BitInputStream(File in) throws FileNotFoundException, IOException {
     this(new FileInputStream(in));
   }
 
   public BitInputStream(FileInputStream fileInputStream) throws IOException {
-    DataInputStream in = new DataInputStream(fileInputStream);
-    int size = in.available();
-    this.bytes = new byte[size];
-    this.index = 0;
-    in.read(bytes);
-    in.close();
+    this.in = new BitReader(fileInputStream.getChannel());
   }
 
-  public byte[] allBytes() {
-    return bytes;
+  /*
+   * The underlying reader, for decoders that work on whole bit windows.
+   */
+  public BitReader reader() {
+    return in;
   }
 
   public int readBit() throws IOException {
-    byte b = bytes[index / 8];
-    int offset = index % 8;
-    final int mask = 1 << 7;
-    ++index;
-    return (b & (mask >>> offset)) == 0 ? 0 : 1;
+    return in.readBit();
   }
 
   public int readByte() throws IOException {
-    byte value = 0;
-    for (int i = 0; i < 8; ++i) {
-      value <<= 1;
-      value |= readBit();
-    }
-    return value & 0xFF;
-  }
-  
+    return in.readByte();
+  }
+
   public int readInt() throws IOException {
-    int value = readByte();
-    value = (value << 8) | readByte();
-    value = (value << 8) | readByte();
-    value = (value << 8) | readByte();
-    return value;
+    return in.readInt();
+  }
+
+  /*
+   * Consumes and returns the next `n` bits, 0 to 64, most significant
+   * bit first.
+   */
+  public long readBits(int n) throws IOException {
+    return in.readBits(n);
+  }
+
+  /*
+   * Returns the next `n` bits without consuming them. Bits past the end
+   * of the file read as zero.
+   */
+  public long peekBits(int n) throws IOException {
+    return in.peekBits(n);
+  }
+
+  public void skipBits(long n) throws IOException {
+    in.skipBits(n);
+  }
+
+  /*
+   * How many bits are left in the file.
+   */
+  public long remainingBits() throws IOException {
+    return in.remainingBits();
+  }
+
+  public boolean isEndOfStream() throws IOException {
+    return in.isEndOfStream();
   }
 
   public void close() throws IOException {
-    // intentionally left blank
+    in.close();
   }
-}
\ No newline at end of file
+}
@@ -1,14 +1,12 @@
 
 
 import java.io.*;
-import java.util.BitSet;
+import org.huffman.BitWriter;
 import org.instructures.*;
 
 public class BitOutputStream implements AutoCloseable
 {
-  private final DataOutputStream out;
-  private final BitSet bits;
-  private int index;
+  private final BitWriter out;
 
   public static void main(String[] args) {
     ArgsParser parser = ArgsParser.create("java BitOutputStream")
@@ -57,16 +55,14 @@ public class BitOutputStream implements AutoCloseable
   }
 
   public BitOutputStream(FileOutputStream out) {
-    this.out = new DataOutputStream(out);
-    this.bits = new BitSet();
-    this.index = 0;
+    this.out = new BitWriter(out.getChannel());
   }
 
   /*
    * How many bits have been sent to the output so far.
    */
   public int tally() {
-    return index;
+    return (int) out.tally();
   }
 
   /*
@@ -80,9 +76,15 @@ public class BitOutputStream implements AutoCloseable
    * Writes out the given bit as either 0 or 1.
    */
   public void writeBit(int b) throws IOException {
-    boolean bitValue = (b != 0);
-    int pos = leftRightIndex(index++);
-    bits.set(pos, bitValue);
+    out.writeBit(b);
+  }
+
+  /*
+   * Writes out the low `length` bits of `code`, most significant bit
+   * first.
+   */
+  public void writeBits(long code, int length) throws IOException {
+    out.writeBits(code, length);
   }
 
   /*
@@ -90,9 +92,7 @@ public class BitOutputStream implements AutoCloseable
    * value `v`.
    */
   public void writeByte(int v) throws IOException {
-    for (int i = 7; i >= 0; --i) {
-      this.writeBit(v & (1 << i));
-    }
+    out.writeByte(v);
   }
   
   /*
@@ -100,21 +100,13 @@ public class BitOutputStream implements AutoCloseable
    * byte first.
    */
   public void writeInt(int v) throws IOException {
-    writeByte(v >>> (3 * 8));
-    writeByte(v >>> (2 * 8));
-    writeByte(v >>> (1 * 8));
-    writeByte(v >>> (0 * 8));
+    out.writeInt(v);
   }
 
+  /*
+   * Pads the last byte with zero bits and closes the file.
+   */
   public void close() throws IOException {
-    writeByte(0);
-    writeByte(-1);
-    byte[] contents = bits.toByteArray();
-    out.write(contents, 0, contents.length - 2);
     out.close();
   }
-
-  private static int leftRightIndex(int i) {
-    return (i & ~7) + (7 - (i % 8));
-  }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.util.Random;
+
+import org.instructures.ArgsParser;
+import org.instructures.Operand;
+import org.instructures.Option;
+
+/*
+ * Compares the throughput of the tree walking decoder against the
+ * DecodeTable decoder on generated text. With --max-length, codes limited to
+ * that many bits are decoded too, next to their cost in encoded size.
+ */
+public class DecodeBenchmark {
+
+	private static final String LETTERS = "etaoinshrdlcumwfgypbvkjxqz";
+
+	public static void main(String... args) throws IOException {
+		Operand<Integer> SIZE = Operand.create(Integer.class, "KB");
+		Operand<Integer> ROUNDS = Operand.create(Integer.class, "N");
+		Operand<Integer> LIMIT = Operand.create(Integer.class, "L");
+		Option sizeOption = Option.create("--size", SIZE)
+				.summary("size of the generated input in kilobytes");
+		Option roundsOption = Option.create("--rounds", ROUNDS)
+				.summary("number of timed rounds per decoder");
+		Option limitOption = Option.create("--max-length", LIMIT)
+				.summary("also decode codes limited to L bits");
+		ArgsParser parser = ArgsParser.create("java DecodeBenchmark")
+				.summary("Decoder throughput comparison")
+				.helpFlags("-h,--help");
+		parser.optional(sizeOption);
+		parser.optional(roundsOption);
+		parser.optional(limitOption);
+		ArgsParser.Bindings bindings = parser.parse(args);
+		int size = bindings.hasOption(sizeOption) ? bindings.getOperand(SIZE) : 1024;
+		int rounds = bindings.hasOption(roundsOption) ? bindings.getOperand(ROUNDS) : 5;
+
+		String raw = generateText(size * 1024, new Random(42));
+		HuffmanCodes codes = new HuffmanCodes(raw);
+		String header = codes.encodeTree();
+		StringBuilder text = new StringBuilder();
+		for (char c : raw.toCharArray()) {
+			text.append(codes.getReplacements().get(c));
+		}
+		String encoded = header + text;
+		byte[] packed = pack(encoded);
+
+		System.out.printf("input %d bytes, %d header bits, %d text bits, longest code %d bits%n",
+				raw.length(), header.length(), text.length(), codes.getCodeTable().maxLength());
+
+		HuffmanCodes limited = null;
+		String limitedHeader = null;
+		StringBuilder limitedText = new StringBuilder();
+		byte[] limitedPacked = null;
+		if (bindings.hasOption(limitOption)) {
+			limited = new HuffmanCodes(raw);
+			limited.setMaxLength(bindings.getOperand(LIMIT));
+			limited.init(raw);
+			limitedHeader = limited.encodeTree();
+			for (char c : raw.toCharArray()) {
+				limitedText.append(limited.getReplacements().get(c));
+			}
+			limitedPacked = pack(limitedHeader + limitedText);
+			System.out.printf("limited to %d bits: %d header bits, %d text bits (%+.3f%%)%n",
+					bindings.getOperand(LIMIT), limitedHeader.length(), limitedText.length(),
+					100.0 * (limitedText.length() - text.length()) / text.length());
+		}
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			String walked = codes.decodeByTreeWalk(encoded, header.length(), text.length());
+			long walkTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			String looked = codes.decode(packed, 0, header.length(), text.length());
+			long tableTime = System.nanoTime() - start;
+
+			if (!walked.equals(raw) || !looked.equals(raw)) {
+				throw new IllegalStateException("Decoders disagree with the input");
+			}
+			System.out.printf("round %d: tree walk %8.1f MB/s, table %8.1f MB/s",
+					round, throughput(raw.length(), walkTime), throughput(raw.length(), tableTime));
+			if (limited != null) {
+				start = System.nanoTime();
+				String limitedLooked = limited.decode(limitedPacked, 0, limitedHeader.length(), limitedText.length());
+				long limitedTime = System.nanoTime() - start;
+				if (!limitedLooked.equals(raw)) {
+					throw new IllegalStateException("Limited decoder disagrees with the input");
+				}
+				System.out.printf(", limited table %8.1f MB/s", throughput(raw.length(), limitedTime));
+			}
+			System.out.println();
+		}
+	}
+
+	/*
+	 * Words of skewed letters separated by spaces and newlines, roughly the
+	 * shape of English text.
+	 */
+	static String generateText(int length, Random random) {
+		StringBuilder sb = new StringBuilder(length);
+		while (sb.length() < length) {
+			int word = 1 + random.nextInt(9);
+			for (int i = 0; i < word && sb.length() < length; i++) {
+				double r = random.nextDouble();
+				sb.append(LETTERS.charAt((int) (r * r * LETTERS.length())));
+			}
+			if (sb.length() < length) {
+				sb.append(random.nextInt(12) == 0 ? '\n' : ' ');
+			}
+		}
+		return sb.toString();
+	}
+
+	private static byte[] pack(String bits) {
+		byte[] packed = new byte[(bits.length() + 7) / 8];
+		for (int i = 0; i < bits.length(); i++) {
+			if (bits.charAt(i) == '1') {
+				packed[i >>> 3] |= 0x80 >>> (i & 7);
+			}
+		}
+		return packed;
+	}
+
+	private static double throughput(int bytes, long nanos) {
+		return bytes / (nanos / 1e9) / (1024 * 1024);
+	}
+}
@@ -0,0 +1,72 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.huffman.ByteHistogram;
+import org.instructures.ArgsParser;
+import org.instructures.Operand;
+import org.instructures.Option;
+
+/*
+ * Measures how the histogram pass scales from one thread up to the number
+ * of available processors on a generated file.
+ */
+public class HistogramBenchmark {
+
+	public static void main(String... args) throws IOException {
+		Operand<Integer> SIZE = Operand.create(Integer.class, "MB");
+		Operand<Integer> ROUNDS = Operand.create(Integer.class, "N");
+		Operand<Integer> THREADS = Operand.create(Integer.class, "T");
+		Option sizeOption = Option.create("--size", SIZE)
+				.summary("size of the generated input in megabytes");
+		Option roundsOption = Option.create("--rounds", ROUNDS)
+				.summary("number of timed rounds per thread count");
+		Option threadsOption = Option.create("--threads", THREADS)
+				.summary("largest thread count to measure, doubling from one");
+		ArgsParser parser = ArgsParser.create("java HistogramBenchmark")
+				.summary("Histogram throughput by thread count")
+				.helpFlags("-h,--help");
+		parser.optional(sizeOption);
+		parser.optional(roundsOption);
+		parser.optional(threadsOption);
+		ArgsParser.Bindings bindings = parser.parse(args);
+		int size = bindings.hasOption(sizeOption) ? bindings.getOperand(SIZE) : 256;
+		int rounds = bindings.hasOption(roundsOption) ? bindings.getOperand(ROUNDS) : 5;
+		int maxThreads = bindings.hasOption(threadsOption) ? bindings.getOperand(THREADS)
+				: Runtime.getRuntime().availableProcessors();
+
+		File input = File.createTempFile("histogram", ".txt");
+		input.deleteOnExit();
+		byte[] chunk = DecodeBenchmark.generateText(1 << 20, new Random(42)).getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < size; i++) {
+			Files.write(input.toPath(), chunk, StandardOpenOption.APPEND);
+		}
+		long bytes = input.length();
+		long[] expected = ByteHistogram.count(input);
+
+		System.out.printf("input %d bytes%n", bytes);
+		for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(threads * 2, maxThreads)) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				long best = Long.MAX_VALUE;
+				for (int round = 0; round < rounds; round++) {
+					long start = System.nanoTime();
+					long[] counts = ByteHistogram.count(input, executor, threads);
+					best = Math.min(best, System.nanoTime() - start);
+					if (!Arrays.equals(counts, expected)) {
+						throw new IllegalStateException("Parallel counts disagree with the serial pass");
+					}
+				}
+				System.out.printf("%2d threads: %8.1f MB/s%n", threads, bytes / (best / 1e9) / (1024 * 1024));
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+}
@@ -1,24 +1,45 @@
 
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.PriorityQueue;
-import java.util.Scanner;
 import java.util.Set;
-import java.util.TreeMap;
 
+import org.huffman.AdaptiveHuffman;
+import org.huffman.BitReader;
+import org.huffman.BitWriter;
+import org.huffman.BlockContainer;
+import org.huffman.ByteHistogram;
+import org.huffman.CanonicalCodes;
+import org.huffman.CodeTable;
+import org.huffman.CodeTableCache;
+import org.huffman.Container;
+import org.huffman.ContextModel;
+import org.huffman.DecodeTable;
+import org.huffman.Dictionary;
+import org.huffman.DictionaryRecord;
+import org.huffman.LengthLimitedCodes;
+import org.huffman.MappedCodec;
+import org.huffman.ParallelEncoder;
+import org.huffman.SampledHistogram;
+import org.huffman.StreamingEncoder;
 import org.instructures.ArgsParser;
 import org.instructures.Operand;
 import org.instructures.Option;
@@ -26,40 +47,126 @@ import org.instructures.Option;
 
 public class HuffmanCodes {
 	
-	private HuffmanTree<Character, Integer> huffmanTree;
+	private HuffmanTree<Character, Long> huffmanTree;
 	
-	private static final Option ENCODE, DECODE, SHOW_FREQUENCY, SHOW_CODES, SHOW_BINARY;
+	private static final Option ENCODE, DECODE, ADAPTIVE, CANONICAL, MAX_LENGTH, BLOCKED, MAPPED, LEGACY, INTERLEAVED, CONTEXT, TRAIN, DICTIONARY, SAMPLE, THREADS, SHOW_FREQUENCY, SHOW_CODES, SHOW_BINARY;
 	
 	private static final Operand<File> FILES;
 	
-	private Map<Character, String> replacements;
+	private static final Operand<Integer> THREAD_COUNT;
+	
+	private static final Operand<Integer> LENGTH_LIMIT;
+	
+	private static final Operand<File> DICTIONARY_FILE;
+	
+	private static final Operand<Integer> SAMPLE_STRIDE;
 	
-	private Map<Character, Integer> frequencyMap;
+	private Map<Character, String> replacements;
 	
 	private static ArgsParser parser;
 	
+	private static final String USAGE = "Usage: java HuffmanCodes OPTIONS IN OUT";
+	
 	private static final String BEGINNING_STRING = "00001000";
 	
+	private static final String CANONICAL_BEGINNING_STRING = "00001001";
+	
+	private static final String BLOCKED_BEGINNING_STRING = "00001010";
+	
+	private static final String ADAPTIVE_BEGINNING_STRING = "00001011";
+	
+	private static final String MAPPED_BEGINNING_STRING = "00001100";
+	
+	// the marker, then at most 255 inner nodes and 256 leaves of 9 bits
+	private static final int MAX_TREE_HEADER_LENGTH = BEGINNING_STRING.length() + 255 + 256 * 9;
+	
+	private static final String STANDARD_STREAM = "-";
+	
+	private static final int DECODE_CHUNK_SIZE = 1 << 16;
+	
 	public File inputFile;
 	
 	public File outputFile;
 	
 	private int startIndex;
 	
-	private String inputString;
+	private byte[] inputBytes;
 	
-	private String encodedString;
-
 	private String binary;
 	
+	private boolean canonical;
+	
+	private boolean blocked;
+	
+	private boolean adaptive;
+	
+	private boolean mapped;
+	
+	private boolean legacy;
+	
+	private boolean interleaved;
+	
+	private boolean context;
+	
+	private ContextModel contextModel;
+	
+	private long[] pairCounts;
+	
+	private Dictionary dictionary;
+	
+	private SampledHistogram sample;
+	
+	private long[] inputCounts;
+	
+	private CodeTableCache cache;
+	
+	private CodeTableCache.Tables cachedTables;
+	
+	private boolean containerBinary;
+	
+	private boolean recordBinary;
+	
+	private int maxLength;
+	
+	private long unlimitedBits;
+	
+	private CodeTable codeTable;
+	
+	private int threads = 1;
+	
+	private long[] byteCounts;
+	
+	private File binaryFile;
+	
+	private byte[] binaryBits;
+	
+	private long binaryOffset;
+	
+	private int binaryLength;
+	
 
 	
 	  static {
-		 String helpMsg = "Usage: java HuffmanCodes OPTIONS IN OUT\r\n" + 
+		 String helpMsg = USAGE + "\r\n" + 
 					"Encodes and decodes files using Huffman's technique\r\n" + 
 					"\r\n" + 
 					"  -e, --encode               encodes IN to OUT\r\n" + 
 					"  -d, --decode               decodes IN to OUT\r\n" + 
+					"      --train                trains a dictionary on the files under IN and saves it to OUT\r\n" + 
+					"  -a, --adaptive             encodes IN in one pass with adaptive codes; - for IN or OUT\r\n" + 
+					"                             reads standard input or writes standard output\r\n" + 
+					"  -c, --canonical            encodes with canonical codes and a code-length header\r\n" + 
+					"  -l, --max-length=L         limits codes to L bits, implies --canonical\r\n" + 
+					"  -b, --blocked              encodes IN as independently decodable blocks\r\n" + 
+					"  -m, --mapped               encodes IN through memory-mapped segments with 64-bit\r\n" + 
+					"                             lengths; needed past 2^31 encoded bits\r\n" + 
+					"  -i, --interleaved          splits every block into 4 streams decoded in lockstep\r\n" + 
+					"  -x, --context              codes every byte with a table picked by the byte before it\r\n" + 
+					"  -D, --dictionary=D         encodes with, or decodes with, the trained dictionary D\r\n" + 
+					"  -s, --sample=S             builds the code from every Sth block of IN, so encoding\r\n" + 
+					"                             reads IN once; reports the ratio lost to the sample\r\n" + 
+					"      --legacy               encodes IN in the unversioned layout of earlier releases\r\n" + 
+					"  -t, --threads=N            encodes or decodes blocks of IN on N threads\r\n" + 
 					"      --show-frequency       show the frequencies of each byte \r\n" + 
 					"      --show-codes           show the codes for each byte\r\n" + 
 					"      --show-binary          show the encoded sequence in binary\r\n" + 
@@ -73,13 +180,64 @@ public class HuffmanCodes {
 		    DECODE = Option.create("-d,--decode")
 		    		.summary("decodes IN to OUT");
 		    
+		    TRAIN = Option.create("--train")
+		    		.summary("trains a dictionary on the files under IN and saves it to OUT");
+		    
+		    ADAPTIVE = Option.create("-a,--adaptive")
+		    		.summary("encodes IN in one pass with adaptive codes");
+		    
+		    CANONICAL = Option.create("-c,--canonical")
+		    		.summary("encodes with canonical codes and a code-length header");
+		    
+		    LENGTH_LIMIT = Operand.create(Integer.class, "L");
+		    MAX_LENGTH = Option.create("-l,--max-length", LENGTH_LIMIT)
+		    		.summary("limits codes to L bits, implies --canonical");
+		    
+		    BLOCKED = Option.create("-b,--blocked")
+		    		.summary("encodes IN as independently decodable blocks");
+		    
+		    MAPPED = Option.create("-m,--mapped")
+		    		.summary("encodes IN through memory-mapped segments with 64-bit lengths");
+		    
+		    INTERLEAVED = Option.create("-i,--interleaved")
+		    		.summary("splits every block into 4 streams decoded in lockstep");
+		    
+		    CONTEXT = Option.create("-x,--context")
+		    		.summary("codes every byte with a table picked by the byte before it");
+		    
+		    DICTIONARY_FILE = Operand.create(File.class, "D");
+		    DICTIONARY = Option.create("-D,--dictionary", DICTIONARY_FILE)
+		    		.summary("encodes with, or decodes with, the trained dictionary D");
+		    
+		    SAMPLE_STRIDE = Operand.create(Integer.class, "S");
+		    SAMPLE = Option.create("-s,--sample", SAMPLE_STRIDE)
+		    		.summary("builds the code from every Sth block of IN, so encoding reads IN once");
+		    
+		    LEGACY = Option.create("--legacy")
+		    		.summary("encodes IN in the unversioned layout of earlier releases");
+		    
+		    THREAD_COUNT = Operand.create(Integer.class, "N");
+		    THREADS = Option.create("-t,--threads", THREAD_COUNT)
+		    		.summary("encodes or decodes blocks of IN on N threads");
+		    
 		    SHOW_FREQUENCY = Option.create("--show-frequency")
 		    		.summary("show the frequencies of each byte");
 		    SHOW_CODES = Option.create("--show-codes")
 		    		.summary("show the codes for each byte");
 		    SHOW_BINARY = Option.create("--show-binary")
 		    		.summary("show the encoded sequence in binary");
-		    parser.requireOneOf("encode/decode option", ENCODE, DECODE);
+		    parser.requireOneOf("encode/decode option", ENCODE, DECODE, TRAIN);
+		    parser.optional(ADAPTIVE);
+		    parser.optional(CANONICAL);
+		    parser.optional(MAX_LENGTH);
+		    parser.optional(BLOCKED);
+		    parser.optional(MAPPED);
+		    parser.optional(LEGACY);
+		    parser.optional(INTERLEAVED);
+		    parser.optional(CONTEXT);
+		    parser.optional(DICTIONARY);
+		    parser.optional(SAMPLE);
+		    parser.optional(THREADS);
 		    parser.optional(SHOW_FREQUENCY);
 		    parser.optional(SHOW_CODES);
 		    parser.optional(SHOW_BINARY);
@@ -92,6 +250,16 @@ public class HuffmanCodes {
 	  public HuffmanCodes(String raw) {
 		  init(raw);
 	  }
+	  
+	  /*
+	   * Codes `raw` with canonical tables from `cache`, so an input whose
+	   * distribution was seen before builds no tree at all.
+	   */
+	  public HuffmanCodes(String raw, CodeTableCache cache) {
+		  this.cache = cache;
+		  this.canonical = true;
+		  init(raw);
+	  }
 	
 	public HuffmanCodes(ArgsParser.Bindings bindings) throws FileNotFoundException, IOException {
 		List<File> files = bindings.getOperands(FILES);
@@ -101,32 +269,86 @@ public class HuffmanCodes {
 		inputFile = files.get(0);
 		outputFile = files.get(1);
 
-		if (bindings.hasOption(ENCODE)) {
-			String inputStr = readFile(inputFile.getAbsolutePath());
-			init(inputStr);
-		} else {
-			BitInputStream inputStream = new BitInputStream(inputFile);
-			encodedString = buildEncodedString(inputStream);
+		adaptive = bindings.hasOption(ADAPTIVE);
+		canonical = bindings.hasOption(CANONICAL);
+		blocked = bindings.hasOption(BLOCKED);
+		mapped = bindings.hasOption(MAPPED);
+		legacy = bindings.hasOption(LEGACY);
+		interleaved = bindings.hasOption(INTERLEAVED);
+		context = bindings.hasOption(CONTEXT);
+		if (interleaved && (legacy || mapped || blocked || adaptive)) {
+			throw new IllegalArgumentException("Interleaved streams need the default container layout");
 		}
-	}
-	
-	private String buildEncodedString(BitInputStream inputStream) {
-		String result = "";
-		while(true) {
-			try {
-				result += inputStream.readBit();
-			} catch (Exception e) {
-				break;
+		if (context && (legacy || mapped || blocked || adaptive || interleaved)) {
+			throw new IllegalArgumentException("Context modelling needs the default container layout");
+		}
+		if (bindings.hasOption(MAX_LENGTH)) {
+			maxLength = bindings.getOperand(LENGTH_LIMIT);
+			if (maxLength < 1 || maxLength > CanonicalCodes.MAX_LENGTH) {
+				throw new IllegalArgumentException("--max-length takes 1 to " + CanonicalCodes.MAX_LENGTH + " bits, not " + maxLength);
 			}
 		}
-		return result;
+		if (bindings.hasOption(THREADS)) {
+			threads = bindings.getOperand(THREAD_COUNT);
+		}
+		if (bindings.hasOption(DICTIONARY)) {
+			if (legacy || mapped || blocked || adaptive || context || canonical || maxLength > 0) {
+				throw new IllegalArgumentException("Dictionaries need the default container layout and their own codes");
+			}
+			dictionary = Dictionary.load(bindings.getOperand(DICTIONARY_FILE));
+		}
+		if (bindings.hasOption(SAMPLE)) {
+			if (legacy || mapped || blocked || adaptive || context || dictionary != null) {
+				throw new IllegalArgumentException("Sampling needs the default container layout");
+			}
+			if (bindings.hasOption(ENCODE)) {
+				sample = SampledHistogram.sample(inputFile, bindings.getOperand(SAMPLE_STRIDE),
+						ParallelEncoder.DEFAULT_BLOCK_SIZE);
+			}
+		}
+		if (bindings.hasOption(ENCODE) && dictionary != null) {
+			codeTable = dictionary.codeTable();
+		} else if (bindings.hasOption(ENCODE) && context) {
+			pairCounts = ContextModel.count(inputFile, ParallelEncoder.DEFAULT_BLOCK_SIZE);
+			init(ContextModel.symbolCounts(pairCounts));
+			contextModel = ContextModel.build(pairCounts, maxLength > 0 ? maxLength : CanonicalCodes.MAX_LENGTH);
+		} else if (bindings.hasOption(ENCODE) && sample != null) {
+			init(sample.counts());
+		} else if (bindings.hasOption(ENCODE) && !adaptive) {
+			init(ByteHistogram.count(inputFile, threads));
+		}
+		if (blocked && codeTable != null && codeTable.encodedBits(byteCounts) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("--blocked holds at most " + Integer.MAX_VALUE
+					+ " encoded bits; use --mapped for larger inputs");
+		}
 	}
 
 	public static void main(String...args) throws FileNotFoundException, IOException {
 		ArgsParser.Bindings bindings = parser.parse(args);
-		HuffmanCodes encoder = new HuffmanCodes(bindings);
+		HuffmanCodes encoder;
+		try {
+			encoder = new HuffmanCodes(bindings);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		if (bindings.hasOption(TRAIN)) {
+			encoder.train();
+			return;
+		}
 		if (bindings.hasOption(ENCODE)) {
 			encoder.encode();
+			if (bindings.hasOption(MAX_LENGTH)) {
+				encoder.printLengthLimitCost();
+			}
+			if (bindings.hasOption(CONTEXT)) {
+				encoder.printContextCost();
+			}
+			if (bindings.hasOption(SAMPLE)) {
+				encoder.printSampleCost();
+			}
 		} else {
 			encoder.decode();
 		}
@@ -145,6 +367,7 @@ public class HuffmanCodes {
 	}
 	
 	public void printShowCodes() {
+		Map<Character, String> replacements = getReplacements();
 		Set<Character> keyset = replacements.keySet();
 		Character[] keys = keyset.toArray(new Character[keyset.size()]);
 		System.out.println("CODES");
@@ -154,110 +377,532 @@ public class HuffmanCodes {
 	}
 	
 	public void showFrequencies() {
-		Set<Character> keyset = frequencyMap.keySet();
-		Character[] keys = keyset.toArray(new Character[keyset.size()]);
+		if (byteCounts == null) {
+			// a dictionary encode never counts its input
+			byteCounts = new long[ByteHistogram.ALPHABET];
+		}
 		System.out.println("FREQUENCY TABLE");
-		for(Character c : keys) {
-			System.out.println("'" + c + "' : " + frequencyMap.get(c));
+		for(int symbol : symbolsByCount(byteCounts)) {
+			System.out.println("'" + (char) symbol + "' : " + byteCounts[symbol]);
+		}
+	}
+	
+	/*
+	 * How much the length limit costs over the unlimited Huffman code.
+	 */
+	public void printLengthLimitCost() {
+		long limitedBits = codeTable.encodedBits(byteCounts);
+		System.out.println("LENGTH LIMIT");
+		System.out.printf("%d bits at most %d bits per code, %d bits unlimited (+%.3f%%), longest code %d bits%n",
+				limitedBits, maxLength, unlimitedBits,
+				unlimitedBits == 0 ? 0.0 : 100.0 * (limitedBits - unlimitedBits) / unlimitedBits, codeTable.maxLength());
+	}
+	
+	/*
+	 * Trains a dictionary on the files under `inputFile` and saves it to
+	 * `outputFile`.
+	 */
+	public void train() throws IOException {
+		Dictionary trained = Dictionary.train(inputFile, maxLength > 0 ? maxLength : Dictionary.DEFAULT_MAX_LENGTH);
+		trained.save(outputFile);
+		System.out.printf("DICTIONARY %08x, longest code %d bits%n", trained.id(), trained.codeTable().maxLength());
+	}
+	
+	/*
+	 * What the order-1 codes save over the order-0 code, header included.
+	 */
+	public void printContextCost() {
+		long order0 = encodeTree().length() + codeTable.encodedBits(byteCounts);
+		long order1 = contextModel.header().length() + contextModel.encodedBits(pairCounts);
+		System.out.println("CONTEXT MODEL");
+		System.out.printf("%d bits with %d context clusters, %d bits order-0 (%+.3f%%)%n",
+				order1, contextModel.clusters(), order0, order0 == 0 ? 0.0 : 100.0 * (order1 - order0) / order0);
+	}
+	
+	/*
+	 * What building the code from the sample cost over building it from the
+	 * counts of the whole input, which the encode gathered as it went. Both
+	 * are priced with the canonical header.
+	 */
+	public void printSampleCost() {
+		long sampledBits = 0;
+		long fullBits = 0;
+		if (ByteHistogram.distinct(inputCounts) > 0) {
+			sampledBits = CanonicalCodes.encodeHeader(codeTable.lengths()).length() + codeTable.encodedBits(inputCounts);
+			int[] lengths = LengthLimitedCodes.lengths(inputCounts, maxLength > 0 ? maxLength : CanonicalCodes.MAX_LENGTH);
+			fullBits = CanonicalCodes.encodeHeader(lengths).length() + CodeTable.canonical(lengths).encodedBits(inputCounts);
 		}
+		System.out.println("SAMPLED HISTOGRAM");
+		System.out.printf("%d of %d bytes sampled, %d escape codes%n", sample.sampledBytes(), sample.inputBytes(),
+				sample.escapes());
+		System.out.printf("%d bits from the sample, %d bits from a full histogram (%+.3f%%)%n",
+				sampledBits, fullBits, fullBits == 0 ? 0.0 : 100.0 * (sampledBits - fullBits) / fullBits);
 	}
 	
-	public void showBinary() {
+	public void showBinary() throws IOException {
 		System.out.println("ENCODED SEQUENCE");
+		if (this.binary == null && recordBinary) {
+			this.binary = DictionaryRecord.textBits(FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ));
+		} else if (this.binary == null && containerBinary) {
+			this.binary = Container.textBits(FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ));
+		} else if (this.binary == null) {
+			if (this.binaryBits == null) {
+				this.binaryBits = Files.readAllBytes(binaryFile.toPath());
+			}
+			this.binary = bitString(binaryBits, binaryOffset, binaryLength);
+		}
 		System.out.println(this.binary);
 	}
 
+	/*
+	 * Codes the UTF-8 bytes of `raw`, so any text round-trips through the
+	 * byte alphabet.
+	 */
 	public void init(String raw) {
-		Map<Character, Integer> frequencyMap = sortedFrequencyMap(raw);
-		setFrequencyMap(frequencyMap);
-		this.inputString = raw;
-		PriorityQueue<HuffmanTree<Character, Integer>> q = sortedFrequency(raw);
-		HuffmanTree<Character, Integer> resultTree = buildHuffmanTree(q);
+		this.inputBytes = raw.getBytes(StandardCharsets.UTF_8);
+		init(ByteHistogram.count(inputBytes));
+	}
+	
+	/*
+	 * Codes of at most `maxLength` bits number 2^maxLength, so a shorter
+	 * limit than that cannot give every distinct byte a code.
+	 */
+	private void checkMaxLength(int distinct) {
+		if (maxLength > 0 && maxLength < Long.SIZE - 1 && (1L << maxLength) < distinct) {
+			int needed = Long.SIZE - Long.numberOfLeadingZeros(distinct - 1);
+			throw new IllegalArgumentException(distinct + " distinct bytes need --max-length of at least " + needed
+					+ " bits, not " + maxLength);
+		}
+	}
+	
+	/*
+	 * Builds the tree and codes from per-byte counts, as produced by
+	 * ByteHistogram, without holding the input itself.
+	 */
+	public void init(long[] counts) {
+		checkMaxLength(ByteHistogram.distinct(counts));
+		this.byteCounts = counts;
+		if (cache != null) {
+			this.huffmanTree = null;
+			this.cachedTables = cache.get(counts);
+			this.codeTable = cachedTables == null ? new CodeTable(new long[ByteHistogram.ALPHABET], new int[ByteHistogram.ALPHABET])
+					: cachedTables.codeTable();
+			this.unlimitedBits = codeTable.encodedBits(counts);
+			this.replacements = null;
+			return;
+		}
+		PriorityQueue<HuffmanTree<Character, Long>> q = new PriorityQueue<HuffmanTree<Character, Long>>(new EntryComparator());
+		// leaves go in by count, as from the sorted frequency map, which keeps ties in the old order
+		for (int symbol : symbolsByCount(counts)) {
+			q.add(new HuffmanTree<Character, Long>((char) symbol, counts[symbol]));
+		}
+		HuffmanTree<Character, Long> resultTree = buildHuffmanTree(q);
 		setHuffmanTree(resultTree);
 		
-		Map<Character, String> replacementMap = generateReplacementMap();
-		setReplacements(replacementMap);
-		
+		CodeTable treeCodes = buildCodeTable();
+		this.unlimitedBits = treeCodes.encodedBits(counts);
+		if (maxLength > 0 && treeCodes.maxLength() > maxLength) {
+			treeCodes = CodeTable.canonical(LengthLimitedCodes.lengths(counts, maxLength));
+		} else if (isCanonical() && !treeCodes.isEmpty()) {
+			treeCodes = CodeTable.canonical(treeCodes.lengths());
+		}
+		this.codeTable = treeCodes;
+		this.replacements = null;
+	}
+	
+	/*
+	 * Fills the code and length of every leaf in a single walk of the tree.
+	 * A tree that is a lone leaf gets the one bit code 0.
+	 */
+	public CodeTable buildCodeTable() {
+		long[] codes = new long[ByteHistogram.ALPHABET];
+		int[] lengths = new int[ByteHistogram.ALPHABET];
+		if (huffmanTree != null) {
+			if (huffmanTree.isLeaf()) {
+				lengths[huffmanTree.getKey()] = 1;
+			} else {
+				fillCodes(huffmanTree, 0, 0, codes, lengths);
+			}
+		}
+		return new CodeTable(codes, lengths);
+	}
+	
+	private void fillCodes(HuffmanTree<Character, Long> node, long code, int length, long[] codes, int[] lengths) {
+		if (node.isLeaf()) {
+			codes[node.getKey()] = code;
+			lengths[node.getKey()] = length;
+		} else {
+			fillCodes(node.getLeftChild(), code << 1, length + 1, codes, lengths);
+			fillCodes(node.getRightChild(), (code << 1) | 1, length + 1, codes, lengths);
+		}
+	}
+	
+	public void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+	
+	/*
+	 * Limits codes to `maxLength` bits, or lifts the limit when zero. Limited
+	 * codes are no longer a Huffman tree, so they are always written with
+	 * the canonical header.
+	 */
+	public void setMaxLength(int maxLength) {
+		this.maxLength = maxLength;
 	}
 	
-	public void encode() {
-		encode(inputString);
+	private boolean isCanonical() {
+		return canonical || maxLength > 0;
 	}
-	private String encode(String raw) {
-		String resultStream = "";
+	
+	public void setBlocked(boolean blocked) {
+		this.blocked = blocked;
+	}
+	
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	public void encode() throws IOException {
+		if (adaptive) {
+			encodeAdaptive();
+		} else if (inputBytes == null) {
+			encodeFile();
+		} else {
+			encode(inputBytes);
+		}
+	}
+	
+	/*
+	 * Second pass of the streaming encoder: re-reads `inputFile` and packs
+	 * the codes straight into `outputFile`, in a Container unless one of the
+	 * older layouts is asked for. Legacy text too long for the 32-bit length
+	 * field goes through MappedCodec. A dictionary encode skips the counting
+	 * pass altogether, and a sampled one reads only its sample in it. A
+	 * dictionary encode of an input that fits one block is written as a
+	 * compact DictionaryRecord.
+	 */
+	private void encodeFile() throws IOException {
+		if (dictionary != null && !interleaved && inputFile.length() <= DictionaryRecord.MAX_SIZE) {
+			DictionaryRecord.encode(inputFile, outputFile, dictionary);
+			this.binaryFile = outputFile;
+			this.recordBinary = true;
+			return;
+		}
+		if (dictionary != null) {
+			int flags = Container.FLAG_DICTIONARY | (interleaved ? Container.FLAG_INTERLEAVED : 0);
+			Container.encode(inputFile, outputFile, dictionary.header(), codeTable, flags,
+					ParallelEncoder.DEFAULT_BLOCK_SIZE, threads);
+			this.binaryFile = outputFile;
+			this.containerBinary = true;
+			return;
+		}
+		if (context) {
+			Container.encode(inputFile, outputFile, contextModel, ParallelEncoder.DEFAULT_BLOCK_SIZE, threads);
+			this.binaryFile = outputFile;
+			this.containerBinary = true;
+			return;
+		}
 		String header = encodeTree();
-		
-		for(char c : raw.toCharArray()) {
-			resultStream += replacements.get(c);
+		long textBits = codeTable.encodedBits(byteCounts);
+		if (!(legacy || mapped || blocked)) {
+			int flags = (isCanonical() ? Container.FLAG_CANONICAL : 0) | (interleaved ? Container.FLAG_INTERLEAVED : 0);
+			if (sample != null) {
+				inputCounts = new long[ByteHistogram.ALPHABET];
+			}
+			Container.encode(inputFile, outputFile, header, codeTable, flags, ParallelEncoder.DEFAULT_BLOCK_SIZE, threads,
+					inputCounts);
+			this.binaryFile = outputFile;
+			this.containerBinary = true;
+			return;
 		}
-		this.binary = resultStream;
-		try {
-			writeBits(header, resultStream);
-		} catch (Exception e) { 
-			e.printStackTrace();
+		if (blocked) {
+			// refuses a text past the 32-bit length rather than falling back to the mapped layout
+			header = BLOCKED_BEGINNING_STRING + header;
+			BlockContainer.encode(inputFile, outputFile, header, codeTable, textBits, threads, ParallelEncoder.DEFAULT_BLOCK_SIZE);
+		} else if (mapped || textBits > Integer.MAX_VALUE) {
+			long symbols = 0;
+			for (long count : byteCounts) {
+				symbols += count;
+			}
+			header = MAPPED_BEGINNING_STRING + longBits(textBits) + longBits(symbols) + header;
+			new MappedCodec(codeTable).encode(inputFile, outputFile, header);
+		} else if (threads > 1) {
+			new ParallelEncoder(codeTable, threads).encode(inputFile, outputFile, header, textBits);
+		} else {
+			new StreamingEncoder(codeTable).encode(inputFile, outputFile, header, textBits);
 		}
-		return header + resultStream;
+		this.binaryFile = outputFile;
+		this.binaryOffset = 64 + header.length();
+		this.binaryLength = (int) Math.min(Integer.MAX_VALUE, textBits);
 	}
 	
-	private void writeBits(String header, String resultStream) throws IOException {
-		BitOutputStream out = new BitOutputStream(outputFile);
-		out.writeInt(header.length());
-		out.writeInt(resultStream.length());
-		for(char c : header.toCharArray()) {
-			if (c == '1') {
-				out.writeBit(1);
-			} else {
-				out.writeBit(0);
+	private static String longBits(long value) {
+		return String.format("%64s", Long.toBinaryString(value)).replace(' ', '0');
+	}
+	
+	/*
+	 * Single pass over `inputFile`, which may be standard input. The header
+	 * is only the marker and the text length is unknown up front, so it is
+	 * written as -1; the text ends with AdaptiveHuffman.END_OF_STREAM.
+	 */
+	private void encodeAdaptive() throws IOException {
+		AdaptiveHuffman model = new AdaptiveHuffman();
+		long textBits;
+		try (ReadableByteChannel in = openInput();
+				BitWriter out = new BitWriter(openOutput())) {
+			out.writeInt(ADAPTIVE_BEGINNING_STRING.length());
+			out.writeInt(-1);
+			for (int i = 0; i < ADAPTIVE_BEGINNING_STRING.length(); i++) {
+				out.writeBit(ADAPTIVE_BEGINNING_STRING.charAt(i) == '1' ? 1 : 0);
 			}
+			model.encode(in, out);
+			textBits = out.tally() - 64 - ADAPTIVE_BEGINNING_STRING.length();
 		}
-		for(char c : resultStream.toCharArray()) {
-			if (c == '1') {
-				out.writeBit(1);
-			} else {
-				out.writeBit(0);
+		finishAdaptive(model, outputFile, textBits);
+	}
+	
+	/*
+	 * Shows the adaptive run like a static one: counts come from the final
+	 * leaf weights and the binary from `file`, unless it was a pipe.
+	 */
+	private void finishAdaptive(AdaptiveHuffman model, File file, long textBits) {
+		init(model.counts());
+		this.binaryOffset = 64 + ADAPTIVE_BEGINNING_STRING.length();
+		this.binaryLength = (int) Math.min(Integer.MAX_VALUE, textBits);
+		if (STANDARD_STREAM.equals(file.getPath())) {
+			this.binary = "";
+		} else {
+			this.binaryFile = file;
+		}
+	}
+	
+	private ReadableByteChannel openInput() throws IOException {
+		if (STANDARD_STREAM.equals(inputFile.getPath())) {
+			return Channels.newChannel(System.in);
+		}
+		return FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+	}
+	
+	private WritableByteChannel openOutput() throws IOException {
+		if (STANDARD_STREAM.equals(outputFile.getPath())) {
+			return Channels.newChannel(System.out);
+		}
+		return FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+	
+	/*
+	 * Encodes the in-memory input into `outputFile`.
+	 */
+	private void encode(byte[] raw) throws IOException {
+		String header = encodeTree();
+		long textBits = codeTable.encodedBits(byteCounts);
+		final long[] codes = codeTable.codes();
+		final int[] lengths = codeTable.lengths();
+		try (BitOutputStream out = new BitOutputStream(outputFile)) {
+			out.writeInt(header.length());
+			out.writeInt((int) textBits);
+			for (int i = 0; i < header.length(); i++) {
+				out.writeBit(header.charAt(i) == '1' ? 1 : 0);
+			}
+			for (byte b : raw) {
+				int symbol = b & 0xFF;
+				out.writeBits(codes[symbol], lengths[symbol]);
 			}
 		}
-
-		out.close();
-		
+		this.binaryFile = outputFile;
+		this.binaryOffset = 64 + header.length();
+		this.binaryLength = (int) textBits;
 	}
 	
 	public String encodeTree() {
+		if (codeTable == null || codeTable.isEmpty()) {
+			return BEGINNING_STRING;
+		}
+		if (cachedTables != null) {
+			return CANONICAL_BEGINNING_STRING + cachedTables.header();
+		}
+		if (isCanonical()) {
+			return CANONICAL_BEGINNING_STRING + CanonicalCodes.encodeHeader(codeTable.lengths());
+		}
 		String encodedTree = huffmanTree.encode(8);
 		return BEGINNING_STRING + encodedTree;
 	}
 	
-	public void decode() {
-		char[] encodedbits = encodedString.toCharArray();
-		char[] headerLengthBits = subArray(encodedbits, 0, 32);
-		char[] textLengthBits = subArray(encodedbits, 32, 32);
-		int headerLength = fromBinaryString(new String(headerLengthBits));
-		int textLength = fromBinaryString(new String(textLengthBits));
-		String encoded = encodedString.substring(64);
-		String decodedString = decode(encoded, headerLength, textLength);
-		init(decodedString);
-		writeFile(decodedString);
-		
+	/*
+	 * Decodes `inputFile` into `outputFile` a chunk at a time, so neither
+	 * the encoded nor the decoded bytes are ever held whole. Block-indexed
+	 * files are handed to BlockContainer and decoded on `threads` workers.
+	 * Streaming, adaptive and Container files may also come from standard
+	 * input; anything without the Container magic takes the legacy path.
+	 */
+	public void decode() throws IOException {
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		// a mapped text is decoded from the file itself, once `in` is closed
+		DecodeTable mappedTable = null;
+		long mappedBits = 0;
+		long mappedSymbols = 0;
+		try (BitReader in = new BitReader(openInput())) {
+			if (DictionaryRecord.startsWithMagic(in)) {
+				DictionaryRecord record = DictionaryRecord.readHeader(in);
+				try (WritableByteChannel out = openOutput()) {
+					counts = record.decode(in, dictionaryTable(record.id()), out);
+				}
+				this.binaryFile = inputFile;
+				this.recordBinary = !STANDARD_STREAM.equals(inputFile.getPath());
+				if (!recordBinary) {
+					this.binary = "";
+				}
+				init(counts);
+				return;
+			}
+			if (Container.startsWithMagic(in)) {
+				Container container = Container.readHeader(in);
+				ContextModel model = null;
+				DecodeTable table = null;
+				try {
+					if ((container.flags() & Container.FLAG_CONTEXT) != 0) {
+						model = ContextModel.fromHeader(container.header());
+					} else if ((container.flags() & Container.FLAG_DICTIONARY) != 0) {
+						table = dictionaryTable(Dictionary.idFromHeader(container.header()));
+					} else {
+						table = decodeTable(container.header());
+					}
+				} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+					throw new IOException("Corrupt container header", e);
+				}
+				try (WritableByteChannel out = openOutput()) {
+					counts = model != null ? container.decode(in, model, out) : container.decode(in, table, out);
+				}
+				this.binaryFile = inputFile;
+				this.containerBinary = !STANDARD_STREAM.equals(inputFile.getPath());
+				if (!containerBinary) {
+					this.binary = "";
+				}
+				init(counts);
+				return;
+			}
+			int headerLength = in.readInt();
+			int textLength = in.readInt();
+			StringBuilder header = new StringBuilder(headerLength);
+			for (int i = 0; i < headerLength; i++) {
+				header.append(in.readBit() == 0 ? '0' : '1');
+			}
+			this.binaryFile = inputFile;
+			this.binaryOffset = 64 + headerLength;
+			this.binaryLength = textLength;
+			if (header.toString().equals(ADAPTIVE_BEGINNING_STRING)) {
+				AdaptiveHuffman model = new AdaptiveHuffman();
+				long textStart = in.position();
+				try (WritableByteChannel out = openOutput()) {
+					model.decode(in, out);
+				}
+				finishAdaptive(model, inputFile, in.position() - textStart);
+				return;
+			}
+			if (header.indexOf(MAPPED_BEGINNING_STRING) == 0) {
+				int at = MAPPED_BEGINNING_STRING.length();
+				if (header.length() < at + 128) {
+					throw new IOException("Corrupt mapped header");
+				}
+				mappedBits = Long.parseUnsignedLong(header.substring(at, at + 64), 2);
+				mappedSymbols = Long.parseUnsignedLong(header.substring(at + 64, at + 128), 2);
+				mappedTable = decodeTable(header.substring(at + 128));
+				this.binaryLength = (int) Math.min(Integer.MAX_VALUE, mappedBits);
+			} else if (header.indexOf(BLOCKED_BEGINNING_STRING) == 0) {
+				DecodeTable table = decodeTable(header.substring(BLOCKED_BEGINNING_STRING.length()));
+				counts = decodeBlocks(table, 64 + headerLength, textLength);
+			} else {
+				decodeStream(in, decodeTable(header.toString()), textLength, counts);
+			}
+		}
+		if (mappedTable != null) {
+			counts = MappedCodec.decode(inputFile, binaryOffset, mappedBits, mappedSymbols, mappedTable, outputFile);
+		}
+		init(counts);
 	}
 	
-	private void writeFile(String inputString) {
-		PrintWriter pw = null;
-		try {
-			pw = new PrintWriter(outputFile.getAbsolutePath());
-			pw.print(inputString);
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			pw.close();
+	private void decodeStream(BitReader reader, DecodeTable table, int textLength, long[] counts) throws IOException {
+		try (OutputStream out = Channels.newOutputStream(openOutput())) {
+			long textEnd = reader.position() + textLength;
+			byte[] chunk = new byte[DECODE_CHUNK_SIZE];
+			while (reader.position() < textEnd) {
+				int decoded = table.decode(reader, textEnd, chunk, 0, chunk.length);
+				for (int i = 0; i < decoded; i++) {
+					counts[chunk[i] & 0xFF]++;
+				}
+				out.write(chunk, 0, decoded);
+			}
+		}
+	}
+	
+	private long[] decodeBlocks(DecodeTable table, long textStart, int textLength) throws IOException {
+		try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			return BlockContainer.open(in, textStart, textLength).decode(in, out, table, threads);
+		}
+	}
+	
+	public String decode(String encoded, int headerLength, int textLength) throws IOException {
+		return decode(packBits(encoded), 0, headerLength, textLength);
+	}
+	
+	/*
+	 * Decodes the header and text found `offset` bits into the packed
+	 * `encoded` bytes, resolving codes through a DecodeTable.
+	 */
+	public String decode(byte[] encoded, long offset, int headerLength, int textLength) throws IOException {
+		DecodeTable table = decodeTable(bitString(encoded, offset, headerLength));
+		long textStart = offset + headerLength;
+		byte[] decoded = table.decodeAll(encoded, textStart, textStart + textLength);
+		this.binary = null;
+		this.binaryBits = encoded;
+		this.binaryOffset = textStart;
+		this.binaryLength = textLength;
+		return new String(decoded, StandardCharsets.UTF_8);
+	}
+	
+	/*
+	 * The table of the loaded dictionary with the given ID.
+	 */
+	private DecodeTable dictionaryTable(int id) throws IOException {
+		Dictionary referenced = Dictionary.forId(id);
+		if (referenced == null) {
+			throw new IOException(String.format("%s needs dictionary %08x; pass it with --dictionary", inputFile, id));
+		}
+		return referenced.decodeTable();
+	}
+	
+	/*
+	 * The table for the code described by `header`, with a multi-symbol
+	 * front table for short codes.
+	 */
+	private DecodeTable decodeTable(String header) {
+		if (cache != null && header.startsWith(CANONICAL_BEGINNING_STRING)) {
+			return cache.forHeader(header.substring(CANONICAL_BEGINNING_STRING.length())).decodeTable();
+		}
+		if (header.startsWith(CANONICAL_BEGINNING_STRING)) {
+			return DecodeTable.fromLengths(CanonicalCodes.decodeHeader(header.substring(CANONICAL_BEGINNING_STRING.length()))).multiSymbol();
+		}
+		if (header.length() == BEGINNING_STRING.length()) {
+			return DecodeTable.fromCodes(new HashMap<Character, String>());
 		}
+		if (header.length() > MAX_TREE_HEADER_LENGTH) {
+			throw new IllegalArgumentException("Tree header of " + header.length() + " bits is too long");
+		}
+		return DecodeTable.fromCodes(collectCodes(buildTree(header))).multiSymbol();
 	}
 	
-	public String decode(String encoded, int headerLength, int textLength) {
-		String resultString = "";
-		HuffmanTree<Character, Integer> huffmanTree = buildTree(encoded);
-		HuffmanTree<Character, Integer> iterator = huffmanTree;
+	/*
+	 * The original decoder, walking the tree one bit at a time. Kept as the
+	 * baseline that DecodeBenchmark measures the table decoder against.
+	 */
+	public String decodeByTreeWalk(String encoded, int headerLength, int textLength) {
+		StringBuilder resultString = new StringBuilder();
+		HuffmanTree<Character, Long> huffmanTree = buildTree(encoded);
+		HuffmanTree<Character, Long> iterator = huffmanTree;
 		char[] encodedBinary = subArray(encoded.toCharArray(), startIndex, textLength );
-		this.binary = new String(encodedBinary);
 		for(char c : encodedBinary) {
 			if (c == '0') {
 				iterator = iterator.getLeftChild();
@@ -265,30 +910,71 @@ public class HuffmanCodes {
 				iterator = iterator.getRightChild();
 			}
 			if (iterator.isLeaf()) {
-				resultString += iterator.getKey();
+				resultString.append(iterator.getKey());
 				iterator = huffmanTree;
 			}
 		}
-		return resultString;
+		return resultString.toString();
+	}
+	
+	/*
+	 * Collects the '0'/'1' path to every leaf in a single walk. A tree that
+	 * is a lone leaf gets the one bit code "0".
+	 */
+	private Map<Character, String> collectCodes(HuffmanTree<Character, Long> tree) {
+		Map<Character, String> codes = new HashMap<Character, String>();
+		if (tree.isLeaf()) {
+			codes.put(tree.getKey(), "0");
+		} else {
+			collectCodes(tree, "", codes);
+		}
+		return codes;
+	}
+	
+	private void collectCodes(HuffmanTree<Character, Long> node, String path, Map<Character, String> codes) {
+		if (node.isLeaf()) {
+			codes.put(node.getKey(), path);
+		} else {
+			collectCodes(node.getLeftChild(), path + "0", codes);
+			collectCodes(node.getRightChild(), path + "1", codes);
+		}
 	}
 	
-	public HuffmanTree<Character, Integer> buildTree(String encoded) {
+	private static byte[] packBits(String bits) {
+		byte[] packed = new byte[(bits.length() + 7) / 8];
+		for (int i = 0; i < bits.length(); i++) {
+			if (bits.charAt(i) == '1') {
+				packed[i >>> 3] |= 0x80 >>> (i & 7);
+			}
+		}
+		return packed;
+	}
+	
+	private static String bitString(byte[] packed, long offset, int length) {
+		StringBuilder bits = new StringBuilder(length);
+		for (long i = offset; i < offset + length; i++) {
+			bits.append((packed[(int) (i >>> 3)] & (0x80 >>> (i & 7))) == 0 ? '0' : '1');
+		}
+		return bits.toString();
+	}
+	
+	public HuffmanTree<Character, Long> buildTree(String encoded) {
 		char[] chars = encoded.toCharArray();
 		startIndex = 8;
 		return readTree(chars);
 	}
 	
-	private HuffmanTree<Character, Integer> readTree(char[] chars) {
+	private HuffmanTree<Character, Long> readTree(char[] chars) {
 		if (chars[startIndex] == '1') {
 			char[] asciiArray = subArray(chars, startIndex+1, 8);
 			String binaryString = new String(asciiArray);
 			char asciiChar = (char) fromBinaryString(binaryString);
 
 			startIndex += 9;
-			return new HuffmanTree<Character, Integer>(asciiChar, 0);
+			return new HuffmanTree<Character, Long>(asciiChar, 0L);
 		} else {
 			startIndex += 1;
-			HuffmanTree<Character, Integer> treeToBuild = new HuffmanTree<Character, Integer>('\0', 0);
+			HuffmanTree<Character, Long> treeToBuild = new HuffmanTree<Character, Long>('\0', 0L);
 			treeToBuild.setLeftChild(readTree(chars));
 			treeToBuild.setRightChild(readTree(chars));
 			return treeToBuild;
@@ -307,110 +993,129 @@ public class HuffmanCodes {
 
 	public Map<Character, String> generateReplacementMap() {
 		Map<Character, String> replacements = new HashMap<Character, String>();
-		Set<Character> keyset = frequencyMap.keySet();
-		Character[] keys = keyset.toArray(new Character[keyset.size()]);
-		for(Character c : keys) {
-			replacements.put(c, buildString(c));
+		for (int symbol = 0; symbol < ByteHistogram.ALPHABET; symbol++) {
+			if (codeTable.length(symbol) > 0) {
+				replacements.put((char) symbol, codeTable.path(symbol));
+			}
 		}
 		return replacements;
 	}
 	
 	
 	public String buildString(Character c) {
-		return huffmanTree.pathString(c, "");
+		return codeTable.path(c);
 	}
 
 
-	public HuffmanTree<Character, Integer> buildHuffmanTree(PriorityQueue<HuffmanTree<Character, Integer>> q) {
+	public HuffmanTree<Character, Long> buildHuffmanTree(PriorityQueue<HuffmanTree<Character, Long>> q) {
 		while (q.size() >= 2) {
 			combineAndSort(q);
 		}
 		return q.peek();
 	}
 	
-	public void combineAndSort(PriorityQueue<HuffmanTree<Character, Integer>> q) {
-		HuffmanTree<Character, Integer> e1 = q.remove();
-		HuffmanTree<Character, Integer> e2 = q.remove();
-		HuffmanTree<Character, Integer> combined = combine(e1, e2);
+	public void combineAndSort(PriorityQueue<HuffmanTree<Character, Long>> q) {
+		HuffmanTree<Character, Long> e1 = q.remove();
+		HuffmanTree<Character, Long> e2 = q.remove();
+		HuffmanTree<Character, Long> combined = combine(e1, e2);
 		q.add(combined);
 	}
 	
-	private HuffmanTree<Character, Integer> combine(HuffmanTree<Character, Integer> e1,
-			HuffmanTree<Character, Integer> e2) {
-		HuffmanTree<Character, Integer> combined = new HuffmanTree<Character, Integer>('\0', e1.getValue() + e2.getValue());
+	private HuffmanTree<Character, Long> combine(HuffmanTree<Character, Long> e1,
+			HuffmanTree<Character, Long> e2) {
+		HuffmanTree<Character, Long> combined = new HuffmanTree<Character, Long>('\0', e1.getValue() + e2.getValue());
 		combined.setLeftChild(e1);
 		combined.setRightChild(e2);
 		return combined;
 	}
 
 
-	public PriorityQueue<HuffmanTree<Character, Integer>> sortedFrequency(String raw) {
-		Map<Character, Integer> sortedMap = sortedFrequencyMap(raw);
-		List<HuffmanTree<Character, Integer>> entryList = convertEntrySet(sortedMap);
-		PriorityQueue<HuffmanTree<Character, Integer>> entryQ = new PriorityQueue<HuffmanTree<Character, Integer>>(new EntryComparator());
-		for(HuffmanTree<Character, Integer> entry : entryList) {
-			entryQ.add(entry);
-		}
-		return entryQ;
-	}
-	
-	private List<HuffmanTree<Character, Integer>> convertEntrySet(Map<Character, Integer> map) {
-		ArrayList<HuffmanTree<Character, Integer>> result = new ArrayList<HuffmanTree<Character, Integer>>();
-		for(Entry<Character, Integer> entry : map.entrySet()) {
-			result.add(new HuffmanTree<Character, Integer>(entry.getKey(), entry.getValue()));
-		}
-		return result;
-	}
-	
-	public Map<Character, Integer> sortedFrequencyMap(String raw) {
-		Map<Character, Integer> frequencyMap = new HashMap<Character, Integer>();
-		for(char curchar : raw.toCharArray()) {
-			if (frequencyMap.containsKey(curchar)) {
-				frequencyMap.put(curchar, frequencyMap.get(curchar) + 1);
-			} else {
-				frequencyMap.put(curchar, 1);
-			}
-		}
-		ValueComparator comp = new ValueComparator(frequencyMap);
-		Map<Character, Integer> treeMap = new TreeMap<Character, Integer>(comp);
-		treeMap.putAll(frequencyMap);
-		
-		return treeMap;
-		
-	}
-	
-	public HuffmanTree<Character, Integer> getHuffmanTree() {
+	public HuffmanTree<Character, Long> getHuffmanTree() {
 		return huffmanTree;
 	}
 
 
-	public void setHuffmanTree(HuffmanTree<Character, Integer> huffmanTree) {
+	public void setHuffmanTree(HuffmanTree<Character, Long> huffmanTree) {
 		this.huffmanTree = huffmanTree;
 	}
 
-	public Map<Character, Integer> getFrequencyMap() {
-		return frequencyMap;
+	/*
+	 * Occurrences of every byte value, indexed by the byte.
+	 */
+	public long[] getByteCounts() {
+		return byteCounts;
 	}
 
+	/*
+	 * The byte counts as a map ordered by count, then by byte.
+	 */
+	public Map<Character, Integer> getFrequencyMap() {
+		return byteCounts == null ? null : frequencyMap(byteCounts);
+	}
 
+	/*
+	 * Replaces the byte counts; keys must be byte values.
+	 */
 	public void setFrequencyMap(Map<Character, Integer> frequencyMap) {
-		this.frequencyMap = frequencyMap;
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		for (Entry<Character, Integer> entry : frequencyMap.entrySet()) {
+			if (entry.getKey() >= counts.length) {
+				throw new IllegalArgumentException("Not a byte value: " + (int) entry.getKey().charValue());
+			}
+			counts[entry.getKey()] = entry.getValue();
+		}
+		this.byteCounts = counts;
 	}
 
-	public Map<Character, String> getReplacements() {
-		return replacements;
+	/*
+	 * Counts of the UTF-8 bytes of `raw`, ordered by count, then by byte.
+	 */
+	public Map<Character, Integer> sortedFrequencyMap(String raw) {
+		return frequencyMap(ByteHistogram.count(raw.getBytes(StandardCharsets.UTF_8)));
 	}
 
+	private static Map<Character, Integer> frequencyMap(long[] counts) {
+		Map<Character, Integer> frequencyMap = new LinkedHashMap<Character, Integer>();
+		for (int symbol : symbolsByCount(counts)) {
+			frequencyMap.put((char) symbol, Math.toIntExact(counts[symbol]));
+		}
+		return frequencyMap;
+	}
+
+	/*
+	 * The bytes that occur, least frequent first and ties by byte value.
+	 */
+	private static List<Integer> symbolsByCount(long[] counts) {
+		List<Integer> symbols = new ArrayList<Integer>();
+		for (int symbol = 0; symbol < counts.length; symbol++) {
+			if (counts[symbol] > 0) {
+				symbols.add(symbol);
+			}
+		}
+		symbols.sort(Comparator.comparingLong((Integer symbol) -> counts[symbol]).thenComparing(symbol -> symbol));
+		return symbols;
+	}
 
-	public void setReplacements(Map<Character, String> replacements) {
-		this.replacements = replacements;
+	/*
+	 * The codes as '0'/'1' strings, for display. Encoding itself only uses
+	 * the CodeTable.
+	 */
+	public Map<Character, String> getReplacements() {
+		if (replacements == null) {
+			replacements = generateReplacementMap();
+		}
+		return replacements;
+	}
+	
+	public CodeTable getCodeTable() {
+		return codeTable;
 	}
 
-	class EntryComparator implements Comparator<HuffmanTree<Character, Integer>> {
+	class EntryComparator implements Comparator<HuffmanTree<Character, Long>> {
 
 		@Override
-		public int compare(HuffmanTree<Character, Integer> o1, HuffmanTree<Character, Integer> o2) {
-			int value = ((Integer)o1.getValue()) - ((Integer)o2.getValue()) ;
+		public int compare(HuffmanTree<Character, Long> o1, HuffmanTree<Character, Long> o2) {
+			int value = Long.compare(o1.getValue(), o2.getValue());
 			if (value == 0) {
 				return o1.getKey().compareTo(o2.getKey());
 			} else {
@@ -419,8 +1124,6 @@ public class HuffmanCodes {
 		}
 	}
 	
-	
-	
 	public String readFile(String filename){
 		String result = "";
 		try {
@@ -432,30 +1135,6 @@ public class HuffmanCodes {
 		}
 		return result;
 	}	
-	
-//	public String readFile(String filename){
-//		BufferedReader br = null;
-//		StringBuilder sb = new StringBuilder();
-//		
-//		try {
-//			String sCurrentLine;
-//			br = new BufferedReader(new FileReader(filename));
-//			while ((sCurrentLine = br.readLine()) != null) {
-//				sb.append(sCurrentLine + "\n");
-//			}
-//	
-//		} catch (IOException e) {
-//			e.printStackTrace();
-//		}
-//		
-//		try {
-//			if (br != null) br.close();
-//		} catch (IOException ex) {
-//			ex.printStackTrace();
-//		}
-//		return sb.toString();
-//	}
-//	
 
 	final class HuffmanTree<K, V> implements Map.Entry<K, V> {
 	    private final K key;
@@ -474,26 +1153,6 @@ public class HuffmanCodes {
 	    	return treeStringHelper(0);
 	    }
 	    
-	    public String pathString(K key, String pathSoFar) {
-	    	if ((Character) this.key != '\0' && this.key.equals(key)) {
-	    		return pathSoFar;
-	    	} else {
-	    		String leftPath = "";
-	    		if (this.leftChild != null) {
-	    			leftPath = this.leftChild.pathString(key, pathSoFar + "0");
-	    		}
-	    		String rightPath = "";
-	    		if (leftPath.equals("")){
-	        		if (this.rightChild != null) {
-	        			rightPath = this.rightChild.pathString(key, pathSoFar + "1");
-	        		}
-	        		return rightPath;
-	    		} else {
-	    			return leftPath;
-	    		}
-	    	}
-	    }
-	    
 	    public String treeStringHelper(int depth) {
 	    	String result = "\n" + pad(depth) + this.toString();
 	    	if (leftChild != null) {
@@ -574,24 +1233,4 @@ public class HuffmanCodes {
 		}
 	}
 	
-	public class ValueComparator implements Comparator<Character>{
-		
-		public Map<Character, Integer> frequencies;
-
-		public ValueComparator(Map<Character, Integer> frequencies) {
-			this.frequencies = frequencies;
-		}
-
-		@Override
-		public int compare(Character o1, Character o2) {
-			int value = frequencies.get(o1) - frequencies.get(o2);
-			if (value == 0) {
-				return o1.compareTo(o2);
-			} else {
-				return value;
-			}
-		}
-
-	}
-	
 }
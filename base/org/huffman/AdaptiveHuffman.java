@@ -0,0 +1,233 @@
+package org.huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/*
+ * One-pass adaptive Huffman coding (FGK). Encoder and decoder start from the
+ * same tree, holding only the not-yet-transmitted (NYT) leaf, and update it
+ * identically after every symbol, so no header or first pass is needed.
+ *
+ * A symbol already in the tree is sent as its path from the root. A new one
+ * is sent as the path to the NYT leaf followed by SYMBOL_BITS raw bits. The
+ * stream ends with END_OF_STREAM, sent the same way as a new symbol.
+ *
+ * Nodes live in fixed arrays indexed by their FGK number, so weights never
+ * decrease with the index and the root is always the last slot. Swapping two
+ * nodes moves their contents between slots and leaves the parent links of
+ * the slots alone. Memory use is constant.
+ */
+public final class AdaptiveHuffman {
+
+	public static final int END_OF_STREAM = ByteHistogram.ALPHABET;
+
+	private static final int SYMBOLS = ByteHistogram.ALPHABET + 1;
+
+	private static final int SYMBOL_BITS = 9;
+
+	private static final int NODES = 2 * SYMBOLS + 1;
+
+	private static final int ROOT = NODES - 1;
+
+	private static final int NONE = -1;
+
+	private final long[] weight = new long[NODES];
+
+	private final int[] parent = new int[NODES];
+
+	private final int[] left = new int[NODES];
+
+	private final int[] right = new int[NODES];
+
+	private final int[] symbol = new int[NODES];
+
+	private final int[] leaf = new int[SYMBOLS];
+
+	private final int[] path = new int[NODES];
+
+	private int nyt;
+
+	public AdaptiveHuffman() {
+		reset();
+	}
+
+	/*
+	 * Forgets everything seen so far.
+	 */
+	public void reset() {
+		Arrays.fill(weight, 0);
+		Arrays.fill(parent, NONE);
+		Arrays.fill(left, NONE);
+		Arrays.fill(right, NONE);
+		Arrays.fill(symbol, NONE);
+		Arrays.fill(leaf, NONE);
+		nyt = ROOT;
+	}
+
+	/*
+	 * Encodes everything left in `in`, then END_OF_STREAM. Returns the
+	 * number of bytes read.
+	 */
+	public long encode(ReadableByteChannel in, BitWriter out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(ByteHistogram.BUFFER_SIZE);
+		byte[] bytes = buffer.array();
+		long total = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			for (int i = 0; i < read; i++) {
+				encode(bytes[i] & 0xFF, out);
+			}
+			total += read;
+			buffer.clear();
+		}
+		encode(END_OF_STREAM, out);
+		return total;
+	}
+
+	/*
+	 * Decodes symbols from `in` into `out` up to END_OF_STREAM. Returns the
+	 * number of bytes written.
+	 */
+	public long decode(BitReader in, WritableByteChannel out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(ByteHistogram.BUFFER_SIZE);
+		long total = 0;
+		for (int next = decode(in); next != END_OF_STREAM; next = decode(in)) {
+			buffer.put((byte) next);
+			if (!buffer.hasRemaining()) {
+				total += drain(buffer, out);
+			}
+		}
+		return total + drain(buffer, out);
+	}
+
+	/*
+	 * Sends `value`, a byte or END_OF_STREAM, and updates the tree.
+	 */
+	public void encode(int value, BitWriter out) throws IOException {
+		int node = leaf[value];
+		writePath(node == NONE ? nyt : node, out);
+		if (node == NONE) {
+			out.writeBits(value, SYMBOL_BITS);
+		}
+		update(value);
+	}
+
+	/*
+	 * Reads one symbol, a byte or END_OF_STREAM, and updates the tree.
+	 */
+	public int decode(BitReader in) throws IOException {
+		int node = ROOT;
+		while (left[node] != NONE) {
+			node = in.readBit() == 0 ? left[node] : right[node];
+		}
+		int value = node == nyt ? (int) in.readBits(SYMBOL_BITS) : symbol[node];
+		if (value >= SYMBOLS || (node == nyt && leaf[value] != NONE)) {
+			throw new IOException("Invalid adaptive code at bit " + in.position());
+		}
+		update(value);
+		return value;
+	}
+
+	/*
+	 * How often each byte has been coded so far, as leaf weights.
+	 */
+	public long[] counts() {
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		for (int value = 0; value < counts.length; value++) {
+			if (leaf[value] != NONE) {
+				counts[value] = weight[leaf[value]];
+			}
+		}
+		return counts;
+	}
+
+	private void writePath(int node, BitWriter out) throws IOException {
+		int depth = 0;
+		for (; node != ROOT; node = parent[node]) {
+			path[depth++] = right[parent[node]] == node ? 1 : 0;
+		}
+		while (depth > 0) {
+			int length = Math.min(depth, BitReader.MAX_PEEK);
+			long code = 0;
+			for (int i = 0; i < length; i++) {
+				code = (code << 1) | path[--depth];
+			}
+			out.writeBits(code, length);
+		}
+	}
+
+	private void update(int value) {
+		int node = leaf[value];
+		if (node == NONE) {
+			int internal = nyt;
+			node = internal - 1;
+			nyt = internal - 2;
+			left[internal] = nyt;
+			right[internal] = node;
+			parent[node] = internal;
+			parent[nyt] = internal;
+			symbol[node] = value;
+			leaf[value] = node;
+		}
+		while (node != NONE) {
+			int leader = node;
+			while (leader < ROOT && weight[leader + 1] == weight[node]) {
+				leader++;
+			}
+			if (leader != node && leader != parent[node]) {
+				swap(node, leader);
+				node = leader;
+			}
+			weight[node]++;
+			node = parent[node];
+		}
+	}
+
+	/*
+	 * Exchanges the subtrees in slots `a` and `b`, which are not ancestors of
+	 * each other.
+	 */
+	private void swap(int a, int b) {
+		long w = weight[a];
+		weight[a] = weight[b];
+		weight[b] = w;
+		int t = left[a];
+		left[a] = left[b];
+		left[b] = t;
+		t = right[a];
+		right[a] = right[b];
+		right[b] = t;
+		t = symbol[a];
+		symbol[a] = symbol[b];
+		symbol[b] = t;
+		relink(a);
+		relink(b);
+		if (nyt == a) {
+			nyt = b;
+		} else if (nyt == b) {
+			nyt = a;
+		}
+	}
+
+	private void relink(int node) {
+		if (left[node] != NONE) {
+			parent[left[node]] = node;
+			parent[right[node]] = node;
+		} else if (symbol[node] != NONE) {
+			leaf[symbol[node]] = node;
+		}
+	}
+
+	private static long drain(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+		buffer.flip();
+		long written = buffer.remaining();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+		return written;
+	}
+}
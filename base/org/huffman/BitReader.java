@@ -0,0 +1,229 @@
+package org.huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/*
+ * Reads bits most significant first through a 64-bit window that is refilled
+ * from a fixed buffer, which in turn is refilled from a channel. Only the
+ * buffer is ever held in memory, so inputs may be larger than the heap.
+ *
+ * Peeking past the end of the data yields zero bits; only reads and skips
+ * past the end fail, with an EOFException.
+ */
+public final class BitReader implements AutoCloseable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/*
+	 * The widest peek the window can always satisfy.
+	 */
+	public static final int MAX_PEEK = 56;
+
+	private final ReadableByteChannel channel;
+
+	private final byte[] buffer;
+
+	private final ByteBuffer view;
+
+	private int index;
+
+	private int limit;
+
+	private boolean exhausted;
+
+	private long window;
+
+	private int windowBits;
+
+	private long position;
+
+	public BitReader(ReadableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BitReader(ReadableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.buffer = new byte[bufferSize];
+		this.view = ByteBuffer.wrap(buffer);
+	}
+
+	/*
+	 * Reads `length` bytes of `bytes` starting at `offset`, without copying
+	 * them.
+	 */
+	public BitReader(byte[] bytes, int offset, int length) {
+		this.channel = null;
+		this.buffer = bytes;
+		this.view = null;
+		this.index = offset;
+		this.limit = offset + length;
+		this.exhausted = true;
+	}
+
+	/*
+	 * How many bits have been consumed so far.
+	 */
+	public long position() {
+		return position;
+	}
+
+	/*
+	 * Whether every bit of the input has been consumed.
+	 */
+	public boolean isEndOfStream() throws IOException {
+		if (windowBits == 0) {
+			refill();
+		}
+		return windowBits == 0;
+	}
+
+	/*
+	 * How many bits are left, or -1 when the channel cannot tell its size.
+	 */
+	public long remainingBits() throws IOException {
+		long buffered = windowBits + 8L * (limit - index);
+		if (exhausted) {
+			return buffered;
+		}
+		if (channel instanceof SeekableByteChannel) {
+			SeekableByteChannel seekable = (SeekableByteChannel) channel;
+			return buffered + 8 * (seekable.size() - seekable.position());
+		}
+		return -1;
+	}
+
+	/*
+	 * Returns the next `n` bits (1 to MAX_PEEK) without consuming them.
+	 */
+	public long peekBits(int n) throws IOException {
+		if (windowBits < n) {
+			refill();
+		}
+		return window >>> (64 - n);
+	}
+
+	public void skipBits(long n) throws IOException {
+		while (n > MAX_PEEK) {
+			skipBits(MAX_PEEK);
+			n -= MAX_PEEK;
+		}
+		int bits = (int) n;
+		if (windowBits < bits) {
+			refill();
+			if (windowBits < bits) {
+				throw new EOFException("Skipped past the end of the input at bit " + position);
+			}
+		}
+		window <<= bits;
+		windowBits -= bits;
+		position += bits;
+	}
+
+	/*
+	 * Consumes and returns the next `n` bits, 0 to 64.
+	 */
+	public long readBits(int n) throws IOException {
+		if (n > MAX_PEEK) {
+			long high = readBits(n - 32);
+			return (high << 32) | readBits(32);
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long value = peekBits(n);
+		skipBits(n);
+		return value;
+	}
+
+	public int readBit() throws IOException {
+		return (int) readBits(1);
+	}
+
+	public int readByte() throws IOException {
+		return (int) readBits(8);
+	}
+
+	public int readInt() throws IOException {
+		return (int) readBits(32);
+	}
+
+	public long readLong() throws IOException {
+		return readBits(64);
+	}
+
+	/*
+	 * Reads `len` whole bytes into `dst` from a byte boundary, copying
+	 * straight out of the buffer once the window is drained.
+	 */
+	public void readBytes(byte[] dst, int off, int len) throws IOException {
+		if ((position & 7) != 0) {
+			throw new IllegalStateException("Byte reads need a byte boundary, at bit " + position);
+		}
+		while (len > 0 && windowBits >= 8) {
+			dst[off++] = (byte) (window >>> 56);
+			window <<= 8;
+			windowBits -= 8;
+			position += 8;
+			len--;
+		}
+		while (len > 0) {
+			if (index == limit && !fill()) {
+				throw new EOFException("Read past the end of the input at bit " + position);
+			}
+			int n = Math.min(len, limit - index);
+			System.arraycopy(buffer, index, dst, off, n);
+			index += n;
+			off += n;
+			len -= n;
+			position += 8L * n;
+		}
+	}
+
+	/*
+	 * Drops the rest of a partially consumed byte.
+	 */
+	public void alignToByte() throws IOException {
+		int partial = (int) (position & 7);
+		if (partial != 0) {
+			skipBits(8 - partial);
+		}
+	}
+
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	private void refill() throws IOException {
+		while (windowBits <= MAX_PEEK) {
+			if (index == limit && !fill()) {
+				return;
+			}
+			window |= (buffer[index++] & 0xFFL) << (56 - windowBits);
+			windowBits += 8;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		if (exhausted) {
+			return false;
+		}
+		view.clear();
+		int read;
+		do {
+			read = channel.read(view);
+		} while (read == 0);
+		if (read < 0) {
+			exhausted = true;
+			return false;
+		}
+		index = 0;
+		limit = view.position();
+		return true;
+	}
+}
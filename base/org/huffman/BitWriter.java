@@ -0,0 +1,197 @@
+package org.huffman;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*
+ * Packs bits most significant first into a 64-bit accumulator and moves whole
+ * bytes into a reusable buffer that is drained to a channel whenever it
+ * fills. Bytes therefore reach the channel as they are completed instead of
+ * when the writer is closed.
+ *
+ * A writer made over a plain byte[] packs straight into that array instead
+ * and fails with a BufferOverflowException once it is full.
+ */
+public final class BitWriter implements AutoCloseable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private final WritableByteChannel channel;
+
+	private final byte[] buffer;
+
+	private final ByteBuffer view;
+
+	private int position;
+
+	private long accumulator;
+
+	private int pending;
+
+	private long tally;
+
+	public BitWriter(WritableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BitWriter(WritableByteChannel channel, int bufferSize) {
+		if (bufferSize < 8) {
+			throw new IllegalArgumentException("Buffer of " + bufferSize + " bytes is too small");
+		}
+		this.channel = channel;
+		this.buffer = new byte[bufferSize];
+		this.view = ByteBuffer.wrap(buffer);
+	}
+
+	/*
+	 * Packs bits into `target` from its first byte on, without a channel.
+	 */
+	public BitWriter(byte[] target) {
+		this.channel = null;
+		this.buffer = target;
+		this.view = null;
+	}
+
+	/*
+	 * How many bits have been written so far.
+	 */
+	public long tally() {
+		return tally;
+	}
+
+	/*
+	 * Writes the low `length` bits of `code`, most significant first.
+	 * `length` may be anywhere from 0 to 64.
+	 */
+	public void writeBits(long code, int length) throws IOException {
+		if (length > 56) {
+			writeBits(code >>> 32, length - 32);
+			length = 32;
+		}
+		if (pending + length > 64) {
+			flushBytes();
+		}
+		accumulator = (accumulator << length) | (code & ((1L << length) - 1));
+		pending += length;
+		tally += length;
+	}
+
+	public void writeBit(int b) throws IOException {
+		writeBits(b != 0 ? 1 : 0, 1);
+	}
+
+	/*
+	 * Writes out only the least significant byte of `v`.
+	 */
+	public void writeByte(int v) throws IOException {
+		writeBits(v, 8);
+	}
+
+	/*
+	 * Writes out the given 32-bit integer, most significant byte first.
+	 */
+	public void writeInt(int v) throws IOException {
+		writeBits(v, 32);
+	}
+
+	/*
+	 * Writes out the given 64-bit integer, most significant byte first.
+	 */
+	public void writeLong(long v) throws IOException {
+		writeBits(v, 64);
+	}
+
+	/*
+	 * Appends the first `bitCount` bits of `src`, packed most significant
+	 * first the way this writer packs them. Whole bytes are copied when the
+	 * writer happens to be byte aligned.
+	 */
+	public void writePacked(byte[] src, long bitCount) throws IOException {
+		flushBytes();
+		int fullBytes = (int) (bitCount >>> 3);
+		int i = 0;
+		if (pending == 0) {
+			while (i < fullBytes) {
+				if (position == buffer.length) {
+					drain();
+				}
+				int n = Math.min(fullBytes - i, buffer.length - position);
+				System.arraycopy(src, i, buffer, position, n);
+				position += n;
+				i += n;
+			}
+			tally += 8L * fullBytes;
+		} else {
+			for (; i + 7 <= fullBytes; i += 7) {
+				long word = 0;
+				for (int j = i; j < i + 7; j++) {
+					word = (word << 8) | (src[j] & 0xFF);
+				}
+				writeBits(word, 56);
+			}
+			for (; i < fullBytes; i++) {
+				writeBits(src[i], 8);
+			}
+		}
+		int rest = (int) (bitCount & 7);
+		if (rest > 0) {
+			writeBits((src[fullBytes] & 0xFF) >>> (8 - rest), rest);
+		}
+	}
+
+	/*
+	 * Pads with zero bits up to the next byte boundary.
+	 */
+	public void alignToByte() throws IOException {
+		int partial = (int) (tally & 7);
+		if (partial != 0) {
+			writeBits(0, 8 - partial);
+		}
+	}
+
+	/*
+	 * Hands every complete byte to the channel. A trailing partial byte stays
+	 * in the accumulator.
+	 */
+	public void flush() throws IOException {
+		flushBytes();
+		if (channel != null) {
+			drain();
+		}
+	}
+
+	/*
+	 * Pads the last byte with zero bits, flushes and closes the channel.
+	 */
+	public void close() throws IOException {
+		alignToByte();
+		flush();
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	private void flushBytes() throws IOException {
+		while (pending >= 8) {
+			if (position == buffer.length) {
+				drain();
+			}
+			pending -= 8;
+			buffer[position++] = (byte) (accumulator >>> pending);
+		}
+	}
+
+	private void drain() throws IOException {
+		if (channel == null) {
+			throw new BufferOverflowException();
+		}
+		view.clear();
+		view.limit(position);
+		while (view.hasRemaining()) {
+			channel.write(view);
+		}
+		position = 0;
+	}
+}
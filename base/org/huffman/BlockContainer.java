@@ -0,0 +1,270 @@
+package org.huffman;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Block-indexed layout, so that blocks can be decoded independently:
+ *
+ *   int header bits, int text bits, header, text      (as HuffmanCodes)
+ *   zero padding to a byte boundary
+ *   int block count, int block size
+ *   per block: long bit offset into the text, int symbol count
+ *   long byte position of the block count above
+ *
+ * The index trails the text because block offsets are only known once the
+ * text has been written; the final long lets a reader find it from the end.
+ */
+public final class BlockContainer {
+
+	private final long[] offsets;
+
+	private final int[] symbolCounts;
+
+	private final long textStart;
+
+	private final long textBits;
+
+	private BlockContainer(long[] offsets, int[] symbolCounts, long textStart, long textBits) {
+		this.offsets = offsets;
+		this.symbolCounts = symbolCounts;
+		this.textStart = textStart;
+		this.textBits = textBits;
+	}
+
+	/*
+	 * Encodes `input` into `output` behind the given '0'/'1' header and
+	 * appends the block index.
+	 */
+	public static void encode(File input, File output, String header, CodeTable table, long textBits,
+			int threads, int blockSize) throws IOException {
+		if (textBits > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Encoded text of " + textBits + " bits does not fit the 32-bit length field");
+		}
+		ParallelEncoder encoder = new ParallelEncoder(table, threads, blockSize);
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+				BitWriter out = new BitWriter(FileChannel.open(output.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+			long size = in.size();
+			out.writeInt(header.length());
+			out.writeInt((int) textBits);
+			for (int i = 0; i < header.length(); i++) {
+				out.writeBit(header.charAt(i) == '1' ? 1 : 0);
+			}
+			encoder.encodeText(in, out);
+			out.alignToByte();
+			long indexPosition = out.tally() / 8;
+			long[] offsets = encoder.blockOffsets();
+			out.writeInt(offsets.length);
+			out.writeInt(blockSize);
+			for (int i = 0; i < offsets.length; i++) {
+				out.writeLong(offsets[i]);
+				out.writeInt((int) Math.min(blockSize, size - (long) i * blockSize));
+			}
+			out.writeLong(indexPosition);
+		}
+	}
+
+	/*
+	 * Reads the block index of `input`, whose text starts `textStart` bits
+	 * into the file and is `textBits` long.
+	 */
+	public static BlockContainer open(FileChannel input, long textStart, long textBits) throws IOException {
+		long size = input.size();
+		if (size < 16) {
+			throw new EOFException("Block index missing");
+		}
+		ByteBuffer footer = readFully(input, size - 8, 8);
+		long indexPosition = footer.getLong();
+		if (indexPosition < 0 || indexPosition > size - 16) {
+			throw new IOException("Corrupt block index");
+		}
+		ByteBuffer counts = readFully(input, indexPosition, 8);
+		int blockCount = counts.getInt();
+		counts.getInt();
+		if (blockCount < 0 || indexPosition + 8 + 12L * blockCount + 8 != size) {
+			throw new IOException("Corrupt block index");
+		}
+		ByteBuffer index = readFully(input, indexPosition + 8, 12 * blockCount);
+		long[] offsets = new long[blockCount];
+		int[] symbolCounts = new int[blockCount];
+		for (int i = 0; i < blockCount; i++) {
+			offsets[i] = index.getLong();
+			symbolCounts[i] = index.getInt();
+			if ((i == 0 ? offsets[i] != 0 : offsets[i] < offsets[i - 1]) || offsets[i] > textBits
+					|| symbolCounts[i] < 0) {
+				throw new IOException("Corrupt block index");
+			}
+		}
+		return new BlockContainer(offsets, symbolCounts, textStart, textBits);
+	}
+
+	public int blockCount() {
+		return offsets.length;
+	}
+
+	public long decodedSize() {
+		long total = 0;
+		for (int count : symbolCounts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/*
+	 * Decodes every block of `input` on `threads` workers. Each worker reads
+	 * and decodes its blocks in a pair of buffers of its own, reused from
+	 * block to block, and writes every block at its place in `output` with a
+	 * positional write. Returns the counts of the decoded bytes.
+	 */
+	public long[] decode(FileChannel input, FileChannel output, DecodeTable table, int threads) throws IOException {
+		long[] outputPositions = new long[offsets.length];
+		long position = 0;
+		for (int i = 0; i < offsets.length; i++) {
+			outputPositions[i] = position;
+			position += symbolCounts[i];
+		}
+		long[][] blockCounts = new long[offsets.length][];
+		ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new DecodeBlocks(input, output, table, outputPositions, blockCounts, scratch, 0,
+					offsets.length));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		for (long[] block : blockCounts) {
+			for (int symbol = 0; symbol < counts.length; symbol++) {
+				counts[symbol] += block[symbol];
+			}
+		}
+		return counts;
+	}
+
+	private void decodeBlock(FileChannel input, FileChannel output, DecodeTable table, int block,
+			long outputPosition, long[][] blockCounts, Scratch scratch) throws IOException {
+		long bitStart = textStart + offsets[block];
+		long bitEnd = textStart + (block + 1 < offsets.length ? offsets[block + 1] : textBits);
+		long firstByte = bitStart >>> 3;
+		int length = (int) (((bitEnd + 7) >>> 3) - firstByte);
+		int symbols = symbolCounts[block];
+		byte[] encoded = scratch.encoded(length);
+		ByteBuffer dst = ByteBuffer.wrap(encoded, 0, length);
+		while (dst.hasRemaining()) {
+			if (input.read(dst, firstByte + dst.position()) < 0) {
+				throw new EOFException("Block data ends early at byte " + (firstByte + dst.position()));
+			}
+		}
+		BitReader in = new BitReader(encoded, 0, length);
+		in.skipBits(bitStart & 7);
+		byte[] slice = scratch.decoded(symbols);
+		// a block must fill its bit range exactly, or the index is wrong
+		long end = bitEnd - 8 * firstByte;
+		if (table.decode(in, end, slice, 0, symbols) != symbols || in.position() != end) {
+			throw new IOException("Block " + block + " does not decode to " + symbols + " symbols");
+		}
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		ByteHistogram.accumulate(counts, slice, 0, symbols);
+		blockCounts[block] = counts;
+		ByteBuffer src = ByteBuffer.wrap(slice, 0, symbols);
+		while (src.hasRemaining()) {
+			output.write(src, outputPosition + src.position());
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Block data ends early at byte " + (position + buffer.position()));
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/*
+	 * One worker's read and decode buffers, grown to the largest block it
+	 * has seen.
+	 */
+	private static final class Scratch {
+
+		private byte[] encoded = new byte[0];
+
+		private byte[] decoded = new byte[0];
+
+		byte[] encoded(int length) {
+			if (encoded.length < length) {
+				encoded = new byte[length];
+			}
+			return encoded;
+		}
+
+		byte[] decoded(int length) {
+			if (decoded.length < length) {
+				decoded = new byte[length];
+			}
+			return decoded;
+		}
+	}
+
+	private final class DecodeBlocks extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel input;
+
+		private final FileChannel output;
+
+		private final DecodeTable table;
+
+		private final long[] outputPositions;
+
+		private final long[][] blockCounts;
+
+		private final ThreadLocal<Scratch> scratch;
+
+		private final int lo;
+
+		private final int hi;
+
+		DecodeBlocks(FileChannel input, FileChannel output, DecodeTable table, long[] outputPositions,
+				long[][] blockCounts, ThreadLocal<Scratch> scratch, int lo, int hi) {
+			this.input = input;
+			this.output = output;
+			this.table = table;
+			this.outputPositions = outputPositions;
+			this.blockCounts = blockCounts;
+			this.scratch = scratch;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= 1) {
+				for (int block = lo; block < hi; block++) {
+					try {
+						decodeBlock(input, output, table, block, outputPositions[block], blockCounts, scratch.get());
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			} else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new DecodeBlocks(input, output, table, outputPositions, blockCounts, scratch, lo, mid),
+						new DecodeBlocks(input, output, table, outputPositions, blockCounts, scratch, mid, hi));
+			}
+		}
+	}
+}
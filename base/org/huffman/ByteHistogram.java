@@ -0,0 +1,148 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Counts raw byte values into a primitive long[ALPHABET], in one pass and
+ * without boxing. The counts feed tree construction directly.
+ */
+public final class ByteHistogram {
+
+	public static final int ALPHABET = 256;
+
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	private static final int MAP_SIZE = 1 << 28;
+
+	private ByteHistogram() {
+		// intentionally left blank
+	}
+
+	public static long[] count(byte[] data) {
+		long[] counts = new long[ALPHABET];
+		accumulate(counts, data, 0, data.length);
+		return counts;
+	}
+
+	/*
+	 * Counts the occurrences of every byte value in `input`.
+	 */
+	public static long[] count(File input) throws IOException {
+		long[] counts = new long[ALPHABET];
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			while (in.read(buffer) != -1) {
+				accumulate(counts, buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+		}
+		return counts;
+	}
+
+	/*
+	 * Counts `input` on a pool of `threads` threads that lives only for this
+	 * call.
+	 */
+	public static long[] count(File input, int threads) throws IOException {
+		if (threads <= 1) {
+			return count(input);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			return count(input, executor, threads);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/*
+	 * Splits `input` into `parts` ranges and counts each on `executor` into
+	 * its own array, mapping the range a window at a time. The arrays are
+	 * summed once every range is done. The executor is left running.
+	 */
+	public static long[] count(File input, ExecutorService executor, int parts) throws IOException {
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			long size = in.size();
+			long step = Math.max(BUFFER_SIZE, (size + parts - 1) / parts);
+			List<Future<long[]>> partial = new ArrayList<>();
+			for (long from = 0; from < size; from += step) {
+				final long start = from;
+				final long end = Math.min(size, from + step);
+				partial.add(executor.submit(() -> countRange(in, start, end)));
+			}
+			long[] counts = new long[ALPHABET];
+			for (Future<long[]> future : partial) {
+				long[] part = future.get();
+				for (int symbol = 0; symbol < ALPHABET; symbol++) {
+					counts[symbol] += part[symbol];
+				}
+			}
+			return counts;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while counting " + input, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Counting " + input + " failed", e.getCause());
+		}
+	}
+
+	private static long[] countRange(FileChannel in, long from, long to) throws IOException {
+		long[] counts = new long[ALPHABET];
+		byte[] chunk = new byte[BUFFER_SIZE];
+		for (long position = from; position < to; position += MAP_SIZE) {
+			MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, to - position));
+			while (window.hasRemaining()) {
+				int length = Math.min(chunk.length, window.remaining());
+				window.get(chunk, 0, length);
+				accumulate(counts, chunk, 0, length);
+			}
+		}
+		return counts;
+	}
+
+	/*
+	 * Adds the bytes `data[off, off + len)` to `counts`.
+	 */
+	public static void accumulate(long[] counts, byte[] data, int off, int len) {
+		for (int i = off, end = off + len; i < end; i++) {
+			counts[data[i] & 0xFF]++;
+		}
+	}
+
+	/*
+	 * Adds the remaining bytes of `data` to `counts`, through absolute gets
+	 * so direct buffers are counted in place. The position is not moved.
+	 */
+	public static void accumulate(long[] counts, ByteBuffer data) {
+		for (int i = data.position(), end = data.limit(); i < end; i++) {
+			counts[data.get(i) & 0xFF]++;
+		}
+	}
+
+	/*
+	 * How many byte values occur at least once.
+	 */
+	public static int distinct(long[] counts) {
+		int distinct = 0;
+		for (long count : counts) {
+			if (count > 0) {
+				distinct++;
+			}
+		}
+		return distinct;
+	}
+}
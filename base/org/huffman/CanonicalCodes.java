@@ -0,0 +1,199 @@
+package org.huffman;
+
+/*
+ * Canonical Huffman codes over the byte alphabet.
+ *
+ * Only the code length of each symbol is stored. Codes are handed out in
+ * order of (length, symbol), so encoder and decoder derive identical codes
+ * from the lengths alone.
+ *
+ * Header layout, as a '0'/'1' string like the rest of the header code:
+ *
+ *   '0' 8 bits (count - 1) then count * 8 bits of symbols, ascending
+ *   '1' then a 256 bit presence map
+ *
+ * followed by the length of each present symbol in ascending symbol order.
+ * The first length takes LENGTH_BITS bits. Each following one is '0' when it
+ * repeats the previous length, or '1', a sign bit and the size of the change
+ * in unary ('1' * (size - 1) then '0').
+ */
+public final class CanonicalCodes {
+
+	public static final int ALPHABET = ByteHistogram.ALPHABET;
+
+	public static final int MAX_LENGTH = 63;
+
+	private static final int LENGTH_BITS = 6;
+
+	private CanonicalCodes() {
+		// intentionally left blank
+	}
+
+	/*
+	 * Assigns the canonical code of every symbol with a non-zero length.
+	 */
+	public static long[] codes(int[] lengths) {
+		int maxLength = checkLengths(lengths);
+		int[] lengthCount = new int[maxLength + 1];
+		for (int length : lengths) {
+			if (length > 0) {
+				lengthCount[length]++;
+			}
+		}
+		long[] nextCode = new long[maxLength + 1];
+		long code = 0;
+		for (int length = 1; length <= maxLength; length++) {
+			code = (code + lengthCount[length - 1]) << 1;
+			nextCode[length] = code;
+		}
+		long[] codes = new long[lengths.length];
+		for (int symbol = 0; symbol < lengths.length; symbol++) {
+			if (lengths[symbol] > 0) {
+				codes[symbol] = nextCode[lengths[symbol]]++;
+			}
+		}
+		return codes;
+	}
+
+	/*
+	 * Spells out the low `length` bits of `code` as a '0'/'1' path.
+	 */
+	public static String toPath(long code, int length) {
+		char[] path = new char[length];
+		for (int i = 0; i < length; i++) {
+			path[i] = ((code >>> (length - 1 - i)) & 1) == 0 ? '0' : '1';
+		}
+		return new String(path);
+	}
+
+	public static String encodeHeader(int[] lengths) {
+		checkLengths(lengths);
+		int count = 0;
+		for (int length : lengths) {
+			if (length > 0) {
+				count++;
+			}
+		}
+		StringBuilder header = new StringBuilder();
+		if (8 + 8 * count < ALPHABET) {
+			header.append('0');
+			appendBits(header, count - 1, 8);
+			for (int symbol = 0; symbol < ALPHABET; symbol++) {
+				if (lengths[symbol] > 0) {
+					appendBits(header, symbol, 8);
+				}
+			}
+		} else {
+			header.append('1');
+			for (int symbol = 0; symbol < ALPHABET; symbol++) {
+				header.append(lengths[symbol] > 0 ? '1' : '0');
+			}
+		}
+		int previous = 0;
+		for (int symbol = 0; symbol < ALPHABET; symbol++) {
+			int length = lengths[symbol];
+			if (length == 0) {
+				continue;
+			}
+			if (previous == 0) {
+				appendBits(header, length, LENGTH_BITS);
+			} else if (length == previous) {
+				header.append('0');
+			} else {
+				header.append('1').append(length > previous ? '0' : '1');
+				for (int i = 1; i < Math.abs(length - previous); i++) {
+					header.append('1');
+				}
+				header.append('0');
+			}
+			previous = length;
+		}
+		return header.toString();
+	}
+
+	public static int[] decodeHeader(String header) {
+		int[] lengths = new int[ALPHABET];
+		decodeHeader(header, 0, lengths);
+		return lengths;
+	}
+
+	/*
+	 * Reads the header starting at `at` of a longer '0'/'1' string into
+	 * `lengths` and returns where it ends.
+	 */
+	static int decodeHeader(String header, int at, int[] lengths) {
+		boolean[] present = new boolean[ALPHABET];
+		if (header.charAt(at++) == '0') {
+			int count = readBits(header, at, 8) + 1;
+			at += 8;
+			for (int i = 0; i < count; i++) {
+				present[readBits(header, at, 8)] = true;
+				at += 8;
+			}
+		} else {
+			for (int symbol = 0; symbol < ALPHABET; symbol++) {
+				present[symbol] = header.charAt(at++) == '1';
+			}
+		}
+		int previous = 0;
+		for (int symbol = 0; symbol < ALPHABET; symbol++) {
+			if (!present[symbol]) {
+				continue;
+			}
+			int length;
+			if (previous == 0) {
+				length = readBits(header, at, LENGTH_BITS);
+				at += LENGTH_BITS;
+			} else if (header.charAt(at++) == '0') {
+				length = previous;
+			} else {
+				boolean down = header.charAt(at++) == '1';
+				int change = 1;
+				while (header.charAt(at++) == '1') {
+					change++;
+				}
+				length = down ? previous - change : previous + change;
+			}
+			lengths[symbol] = length;
+			previous = length;
+		}
+		checkLengths(lengths);
+		return at;
+	}
+
+	/*
+	 * Rejects lengths that cannot come from a prefix code and returns the
+	 * longest one.
+	 */
+	private static int checkLengths(int[] lengths) {
+		int maxLength = 0;
+		double kraft = 0;
+		for (int length : lengths) {
+			if (length < 0 || length > MAX_LENGTH) {
+				throw new IllegalArgumentException("Invalid code length " + length);
+			}
+			if (length > 0) {
+				kraft += Math.pow(2, -length);
+				maxLength = Math.max(maxLength, length);
+			}
+		}
+		if (maxLength == 0 || kraft > 1.0) {
+			throw new IllegalArgumentException("Code lengths do not describe a prefix code");
+		}
+		return maxLength;
+	}
+
+	static void appendBits(StringBuilder sb, int value, int bits) {
+		for (int i = bits - 1; i >= 0; i--) {
+			sb.append(((value >>> i) & 1) == 0 ? '0' : '1');
+		}
+	}
+
+	static int readBits(String bits, int from, int count) {
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			value = (value << 1) | (bits.charAt(i) == '1' ? 1 : 0);
+		}
+		return value;
+	}
+}
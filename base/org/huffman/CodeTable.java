@@ -0,0 +1,84 @@
+package org.huffman;
+
+/*
+ * The code of every byte value as primitive arrays indexed by the byte: the
+ * code bits right-aligned in `codes` and their number in `lengths`. A length
+ * of zero marks a byte that has no code.
+ */
+public final class CodeTable {
+
+	private final long[] codes;
+
+	private final int[] lengths;
+
+	private final int maxLength;
+
+	public CodeTable(long[] codes, int[] lengths) {
+		if (codes.length != ByteHistogram.ALPHABET || lengths.length != ByteHistogram.ALPHABET) {
+			throw new IllegalArgumentException("Code tables cover exactly " + ByteHistogram.ALPHABET + " symbols");
+		}
+		int maxLength = 0;
+		for (int length : lengths) {
+			if (length < 0 || length > CanonicalCodes.MAX_LENGTH) {
+				throw new IllegalArgumentException("Code length " + length + " does not fit in 64 bits");
+			}
+			maxLength = Math.max(maxLength, length);
+		}
+		this.codes = codes;
+		this.lengths = lengths;
+		this.maxLength = maxLength;
+	}
+
+	/*
+	 * The canonical code with the given per-symbol lengths.
+	 */
+	public static CodeTable canonical(int[] lengths) {
+		return new CodeTable(CanonicalCodes.codes(lengths), lengths.clone());
+	}
+
+	public long code(int symbol) {
+		return codes[symbol];
+	}
+
+	public int length(int symbol) {
+		return lengths[symbol];
+	}
+
+	/*
+	 * The backing arrays, shared rather than copied so encoder loops can
+	 * index them directly. Callers must not modify them.
+	 */
+	public long[] codes() {
+		return codes;
+	}
+
+	public int[] lengths() {
+		return lengths;
+	}
+
+	public int maxLength() {
+		return maxLength;
+	}
+
+	public boolean isEmpty() {
+		return maxLength == 0;
+	}
+
+	/*
+	 * The code of `symbol` spelled out as a '0'/'1' path.
+	 */
+	public String path(int symbol) {
+		return CanonicalCodes.toPath(codes[symbol], lengths[symbol]);
+	}
+
+	/*
+	 * Number of bits an input with the given byte counts encodes to.
+	 */
+	public long encodedBits(long[] counts) {
+		long bits = 0;
+		for (int symbol = 0; symbol < counts.length; symbol++) {
+			bits += counts[symbol] * lengths[symbol];
+		}
+		return bits;
+	}
+}
@@ -0,0 +1,264 @@
+package org.huffman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A bounded, thread-safe LRU cache of ready-built code tables, so inputs
+ * with a distribution seen before skip tree construction.
+ *
+ * Encoders look tables up by a fingerprint of their histogram: every count
+ * quantized to the octave of its share of the total, with zero kept apart
+ * so the set of coded bytes is exact. The code is built from the fingerprint
+ * rather than from whichever input missed first, so a hit always returns
+ * the code that input would have built. Decoders look the same tables up
+ * by their canonical header.
+ *
+ * Every code table takes one slot of an access-ordered map of at most
+ * `capacity` entries, keyed by its header; the least recently used is
+ * evicted first. Fingerprints are aliases of those slots, held apart and
+ * dropped with the slot they point to, so they neither take capacity nor
+ * count as evictions.
+ */
+public final class CodeTableCache {
+
+	private static final int SCALE_BITS = 20;
+
+	private final int capacity;
+
+	private final int maxLength;
+
+	private final Map<String, Tables> entries;
+
+	private final Map<Fingerprint, Tables> fingerprints = new HashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	/*
+	 * A cache of at most `capacity` entries whose codes are at most
+	 * `maxLength` bits.
+	 */
+	public CodeTableCache(int capacity, int maxLength) {
+		if (capacity < 1 || maxLength < 8 || maxLength > CanonicalCodes.MAX_LENGTH) {
+			throw new IllegalArgumentException("Need room for one entry and codes of 8 to "
+					+ CanonicalCodes.MAX_LENGTH + " bits");
+		}
+		this.capacity = capacity;
+		this.maxLength = maxLength;
+		this.entries = new LinkedHashMap<String, Tables>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Tables> eldest) {
+				if (size() > CodeTableCache.this.capacity) {
+					evictions.increment();
+					fingerprints.keySet().removeAll(eldest.getValue().fingerprints);
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public CodeTableCache(int capacity) {
+		this(capacity, CanonicalCodes.MAX_LENGTH);
+	}
+
+	/*
+	 * The tables for inputs with the given byte counts, built on a miss.
+	 * Counts with no coded byte have no tables and return null.
+	 */
+	public Tables get(long[] counts) {
+		Fingerprint key = new Fingerprint(quantize(counts));
+		if (key.isEmpty()) {
+			return null;
+		}
+		Tables tables = lookup(key);
+		if (tables != null) {
+			return tables;
+		}
+		long[] representative = new long[ByteHistogram.ALPHABET];
+		for (int symbol = 0; symbol < representative.length; symbol++) {
+			int octave = key.octaves[symbol];
+			representative[symbol] = octave == 0 ? 0 : 1L << (octave - 1);
+		}
+		tables = new Tables(LengthLimitedCodes.lengths(representative, maxLength));
+		return store(key, tables);
+	}
+
+	/*
+	 * The tables for a canonical code header, built on a miss.
+	 */
+	public Tables forHeader(String header) {
+		Tables tables = lookup(header);
+		if (tables != null) {
+			return tables;
+		}
+		return store(null, new Tables(CanonicalCodes.decodeHeader(header)));
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/*
+	 * Looks a header or a fingerprint up, and marks the slot it leads to as
+	 * the most recently used.
+	 */
+	private Tables lookup(Object key) {
+		Tables tables;
+		synchronized (entries) {
+			tables = key instanceof Fingerprint ? fingerprints.get(key) : entries.get(key);
+			if (tables != null) {
+				entries.get(tables.header());
+			}
+		}
+		if (tables != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return tables;
+	}
+
+	/*
+	 * Tables are built outside the lock; when two threads miss on the same
+	 * key, the first to store wins and both return its tables. A code
+	 * already cached under its header keeps its slot and gains `key` as an
+	 * alias. `key` is null for tables built from a header.
+	 */
+	private Tables store(Fingerprint key, Tables tables) {
+		synchronized (entries) {
+			Tables slot = key != null ? fingerprints.get(key) : null;
+			if (slot != null) {
+				return slot;
+			}
+			slot = entries.get(tables.header());
+			if (slot == null) {
+				entries.put(tables.header(), tables);
+				slot = tables;
+			}
+			if (key != null) {
+				fingerprints.put(key, slot);
+				slot.fingerprints.add(key);
+			}
+			return slot;
+		}
+	}
+
+	/*
+	 * The octave of every count's share of the total, 1 and up, or 0 for a
+	 * zero count.
+	 */
+	static byte[] quantize(long[] counts) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		byte[] octaves = new byte[ByteHistogram.ALPHABET];
+		for (int symbol = 0; symbol < octaves.length; symbol++) {
+			if (counts[symbol] > 0) {
+				long share = Math.max(1, (long) ((double) counts[symbol] / total * (1L << SCALE_BITS)));
+				octaves[symbol] = (byte) (64 - Long.numberOfLeadingZeros(share));
+			}
+		}
+		return octaves;
+	}
+
+	/*
+	 * Ready-built encode and decode tables of one canonical code.
+	 */
+	public static final class Tables {
+
+		private final CodeTable codeTable;
+
+		private final String header;
+
+		private final DecodeTable decodeTable;
+
+		/*
+		 * The fingerprints that lead here, guarded by the cache's lock.
+		 */
+		private final List<Fingerprint> fingerprints = new ArrayList<>(1);
+
+		Tables(int[] lengths) {
+			this.codeTable = CodeTable.canonical(lengths);
+			this.header = CanonicalCodes.encodeHeader(lengths);
+			this.decodeTable = DecodeTable.fromLengths(lengths).multiSymbol();
+		}
+
+		public CodeTable codeTable() {
+			return codeTable;
+		}
+
+		/*
+		 * The CanonicalCodes header of the code.
+		 */
+		public String header() {
+			return header;
+		}
+
+		public DecodeTable decodeTable() {
+			return decodeTable;
+		}
+	}
+
+	private static final class Fingerprint {
+
+		private final byte[] octaves;
+
+		private final int hash;
+
+		Fingerprint(byte[] octaves) {
+			this.octaves = octaves;
+			this.hash = Arrays.hashCode(octaves);
+		}
+
+		boolean isEmpty() {
+			for (byte octave : octaves) {
+				if (octave != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Fingerprint && Arrays.equals(octaves, ((Fingerprint) o).octaves);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/*
+ * Self-describing, checksummed file layout, all fields big-endian:
+ *
+ *   4 bytes  MAGIC
+ *   1 byte   VERSION
+ *   1 byte   flags, FLAG_*
+ *   8 bytes  size of the original input
+ *   4 bytes  block size
+ *   4 bytes  header bits, then the '0'/'1' header packed and byte padded
+ *   4 bytes  CRC32C of everything above
+ *
+ * followed by one frame per block of at most `block size` input bytes:
+ *
+ *   4 bytes  symbol count
+ *   4 bytes  encoded bits
+ *   4 bytes  CRC32C of the encoded bytes
+ *   encoded bits, byte padded
+ *
+ * With FLAG_INTERLEAVED the encoded bytes of a block are an InterleavedCodec
+ * payload rather than one stream of codes. With FLAG_CONTEXT the header is a
+ * ContextModel and every block is coded order-1 from context 0. With
+ * FLAG_DICTIONARY the header is only the ID of a trained Dictionary.
+ *
+ * Every checksum is verified before the bytes it covers are decoded, so a
+ * damaged file fails on its first bad frame instead of decoding garbage.
+ */
+public final class Container {
+
+	public static final byte[] MAGIC = { 'H', 'U', 'F', 'C' };
+
+	public static final int VERSION = 1;
+
+	public static final int FLAG_CANONICAL = 1;
+
+	public static final int FLAG_INTERLEAVED = 2;
+
+	public static final int FLAG_CONTEXT = 4;
+
+	public static final int FLAG_DICTIONARY = 8;
+
+	/*
+	 * Keeps every block's encoded bits within the 32-bit frame field.
+	 */
+	public static final int MAX_BLOCK_SIZE = 1 << 25;
+
+	/*
+	 * Far above any code header, context headers of MAX_CLUSTERS tables
+	 * included, but small enough that a damaged length cannot make the
+	 * reader allocate much before the CRC is checked.
+	 */
+	public static final int MAX_HEADER_BITS = 1 << 20;
+
+	private static final int KNOWN_FLAGS = FLAG_CANONICAL | FLAG_INTERLEAVED | FLAG_CONTEXT | FLAG_DICTIONARY;
+
+	private final int flags;
+
+	private final long originalSize;
+
+	private final int blockSize;
+
+	private final String header;
+
+	private Container(int flags, long originalSize, int blockSize, String header) {
+		this.flags = flags;
+		this.originalSize = originalSize;
+		this.blockSize = blockSize;
+		this.header = header;
+	}
+
+	/*
+	 * Encodes `input` into `output` behind the given '0'/'1' header. Blocks
+	 * are read, encoded on `threads` threads and written all at once, through
+	 * an EncodePipeline.
+	 */
+	public static void encode(File input, File output, String header, CodeTable table, int flags,
+			int blockSize, int threads) throws IOException {
+		encode(input, output, header, table, flags, blockSize, threads, null);
+	}
+
+	/*
+	 * As above, and adds the byte counts of `input` to `counts` as its blocks
+	 * go by, for a code built without counting the input first.
+	 */
+	public static void encode(File input, File output, String header, CodeTable table, int flags,
+			int blockSize, int threads, long[] counts) throws IOException {
+		EncodePipeline.BlockEncoder encoder;
+		if ((flags & FLAG_INTERLEAVED) != 0) {
+			encoder = (src, length, dst) -> 8L * InterleavedCodec.encodeBlock(table, src, 0, length, dst);
+		} else {
+			encoder = (src, length, dst) -> ParallelEncoder.encodeBlock(table, src, 0, length, dst);
+		}
+		if (counts != null) {
+			EncodePipeline.BlockEncoder coder = encoder;
+			encoder = (src, length, dst) -> {
+				long[] block = new long[ByteHistogram.ALPHABET];
+				ByteHistogram.accumulate(block, src, 0, length);
+				synchronized (counts) {
+					for (int symbol = 0; symbol < block.length; symbol++) {
+						counts[symbol] += block[symbol];
+					}
+				}
+				return coder.encode(src, length, dst);
+			};
+		}
+		encode(input, output, header, flags, blockSize, threads, InterleavedCodec.maxPayload(table, blockSize), encoder);
+	}
+
+	/*
+	 * Encodes `input` into `output` with the order-1 codes of `model`.
+	 */
+	public static void encode(File input, File output, ContextModel model, int blockSize, int threads)
+			throws IOException {
+		encode(input, output, model.header(), FLAG_CONTEXT, blockSize, threads, model.maxPayload(blockSize),
+				(src, length, dst) -> model.encodeBlock(src, 0, length, dst));
+	}
+
+	private static void encode(File input, File output, String header, int flags, int blockSize, int threads,
+			int maxPayload, EncodePipeline.BlockEncoder encoder) throws IOException {
+		if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE || threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread and 1 to " + MAX_BLOCK_SIZE + " bytes per block");
+		}
+		if (header.length() > MAX_HEADER_BITS) {
+			throw new IllegalArgumentException("Header of " + header.length() + " bits is longer than " + MAX_HEADER_BITS);
+		}
+		EncodePipeline pipeline = new EncodePipeline(threads, blockSize, maxPayload, encoder);
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+				BitWriter out = new BitWriter(FileChannel.open(output.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+			writeHeader(out, flags, in.size(), blockSize, header);
+			CRC32C crc = new CRC32C();
+			pipeline.run(in, (encoded, symbols, bits) -> {
+				int bytes = (int) ((bits + 7) >>> 3);
+				crc.reset();
+				crc.update(encoded, 0, bytes);
+				out.writeInt(symbols);
+				out.writeInt((int) bits);
+				out.writeInt((int) crc.getValue());
+				out.writePacked(encoded, 8L * bytes);
+			});
+		}
+	}
+
+	/*
+	 * Whether the next bytes of `in` are MAGIC, without consuming them.
+	 * Read as a legacy header length MAGIC would be over a billion bits, so
+	 * the two layouts cannot be confused.
+	 */
+	public static boolean startsWithMagic(BitReader in) throws IOException {
+		return in.peekBits(32) == (ByteBuffer.wrap(MAGIC).getInt() & 0xFFFFFFFFL);
+	}
+
+	/*
+	 * Reads and verifies everything up to the first block frame.
+	 */
+	public static Container readHeader(BitReader in) throws IOException {
+		CRC32C crc = new CRC32C();
+		byte[] fixed = new byte[MAGIC.length + 2 + 8 + 4 + 4];
+		in.readBytes(fixed, 0, fixed.length);
+		ByteBuffer fields = ByteBuffer.wrap(fixed);
+		for (byte b : MAGIC) {
+			if (fields.get() != b) {
+				throw new IOException("Not a Huffman container");
+			}
+		}
+		int version = fields.get() & 0xFF;
+		if (version != VERSION) {
+			throw new IOException("Unsupported container version " + version);
+		}
+		int flags = fields.get() & 0xFF;
+		if ((flags & ~KNOWN_FLAGS) != 0) {
+			throw new IOException("Unknown container flags " + Integer.toBinaryString(flags));
+		}
+		long originalSize = fields.getLong();
+		int blockSize = fields.getInt();
+		int headerBits = fields.getInt();
+		if (originalSize < 0 || blockSize < 1 || blockSize > MAX_BLOCK_SIZE || headerBits < 0
+				|| headerBits > MAX_HEADER_BITS) {
+			throw new IOException("Corrupt container header");
+		}
+		byte[] packed = new byte[(headerBits + 7) >>> 3];
+		in.readBytes(packed, 0, packed.length);
+		crc.update(fixed, 0, fixed.length);
+		crc.update(packed, 0, packed.length);
+		if (in.readInt() != (int) crc.getValue()) {
+			throw new IOException("Container header fails its CRC32C check");
+		}
+		StringBuilder header = new StringBuilder(headerBits);
+		for (int i = 0; i < headerBits; i++) {
+			header.append((packed[i >>> 3] & (0x80 >>> (i & 7))) == 0 ? '0' : '1');
+		}
+		return new Container(flags, originalSize, blockSize, header.toString());
+	}
+
+	public int flags() {
+		return flags;
+	}
+
+	public long originalSize() {
+		return originalSize;
+	}
+
+	public int blockSize() {
+		return blockSize;
+	}
+
+	/*
+	 * The '0'/'1' code header.
+	 */
+	public String header() {
+		return header;
+	}
+
+	/*
+	 * Verifies and decodes every block frame left in `in` into `out`.
+	 * Returns the counts of the decoded bytes.
+	 */
+	public long[] decode(BitReader in, DecodeTable table, WritableByteChannel out) throws IOException {
+		if ((flags & FLAG_INTERLEAVED) != 0) {
+			return decode(in, out, (encoded, bytes, bits, decoded, symbols) ->
+					InterleavedCodec.decodeBlock(table, encoded, bytes, decoded, symbols));
+		}
+		return decode(in, out, (encoded, bytes, bits, decoded, symbols) -> {
+			BitReader text = new BitReader(encoded, 0, bytes);
+			return table.decode(text, bits, decoded, 0, symbols) == symbols && text.position() == bits;
+		});
+	}
+
+	/*
+	 * Decodes the order-1 blocks of a FLAG_CONTEXT container.
+	 */
+	public long[] decode(BitReader in, ContextModel model, WritableByteChannel out) throws IOException {
+		DecodeTable[] tables = model.decodeTables();
+		if (tables[0] == null && originalSize > 0) {
+			throw new IOException("Context header has no tables for " + originalSize + " bytes");
+		}
+		return decode(in, out, (encoded, bytes, bits, decoded, symbols) -> {
+			BitReader text = new BitReader(encoded, 0, bytes);
+			ContextModel.decodeBlock(tables, text, decoded, symbols);
+			return text.position() == bits;
+		});
+	}
+
+	private long[] decode(BitReader in, WritableByteChannel out, BlockDecoder decoder) throws IOException {
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		byte[] encoded = new byte[0];
+		ByteBuffer decoded = ByteBuffer.allocate(blockSize);
+		CRC32C crc = new CRC32C();
+		long remaining = originalSize;
+		for (int block = 0; remaining > 0; block++) {
+			int symbols = in.readInt();
+			int bits = in.readInt();
+			int checksum = in.readInt();
+			if (symbols < 1 || symbols > Math.min(blockSize, remaining) || bits < 0
+					|| bits > (long) symbols * CanonicalCodes.MAX_LENGTH + InterleavedCodec.OVERHEAD_BITS) {
+				throw new IOException("Corrupt frame for block " + block);
+			}
+			int bytes = (int) ((bits + 7L) >>> 3);
+			if (encoded.length < bytes) {
+				encoded = new byte[bytes];
+			}
+			in.readBytes(encoded, 0, bytes);
+			crc.reset();
+			crc.update(encoded, 0, bytes);
+			if ((int) crc.getValue() != checksum) {
+				throw new IOException("Block " + block + " fails its CRC32C check");
+			}
+			if (!decoder.decode(encoded, bytes, bits, decoded.array(), symbols)) {
+				throw new IOException("Block " + block + " does not decode to " + symbols + " symbols");
+			}
+			ByteHistogram.accumulate(counts, decoded.array(), 0, symbols);
+			decoded.clear().limit(symbols);
+			while (decoded.hasRemaining()) {
+				out.write(decoded);
+			}
+			decoded.clear();
+			remaining -= symbols;
+		}
+		if (!in.isEndOfStream()) {
+			throw new IOException("Unexpected data after the last block");
+		}
+		return counts;
+	}
+
+	/*
+	 * The encoded text of every block, stitched back into one '0'/'1'
+	 * string, for display.
+	 */
+	public static String textBits(ReadableByteChannel channel) throws IOException {
+		try (BitReader in = new BitReader(channel)) {
+			Container container = readHeader(in);
+			StringBuilder text = new StringBuilder();
+			for (long remaining = container.originalSize; remaining > 0; ) {
+				remaining -= in.readInt();
+				int bits = in.readInt();
+				in.readInt();
+				for (int i = 0; i < bits; i++) {
+					text.append(in.readBit() == 0 ? '0' : '1');
+				}
+				in.alignToByte();
+			}
+			return text.toString();
+		}
+	}
+
+	private static void writeHeader(BitWriter out, int flags, long originalSize, int blockSize, String header)
+			throws IOException {
+		ByteBuffer fields = ByteBuffer.allocate(MAGIC.length + 2 + 8 + 4 + 4 + (header.length() + 7) / 8);
+		fields.put(MAGIC).put((byte) VERSION).put((byte) flags).putLong(originalSize).putInt(blockSize)
+				.putInt(header.length());
+		byte[] bytes = fields.array();
+		for (int i = 0; i < header.length(); i++) {
+			if (header.charAt(i) == '1') {
+				bytes[fields.position() + (i >>> 3)] |= 0x80 >>> (i & 7);
+			}
+		}
+		CRC32C crc = new CRC32C();
+		crc.update(bytes, 0, bytes.length);
+		out.writePacked(bytes, 8L * bytes.length);
+		out.writeInt((int) crc.getValue());
+	}
+
+	private interface BlockDecoder {
+
+		/*
+		 * Decodes `symbols` symbols from the first `bytes` bytes of `encoded`
+		 * into `decoded`. Returns whether they took exactly `bits` bits.
+		 */
+		boolean decode(byte[] encoded, int bytes, int bits, byte[] decoded, int symbols) throws IOException;
+	}
+}
@@ -0,0 +1,340 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Order-1 codes: every byte is coded with the table of the cluster its
+ * preceding byte belongs to. Contexts with similar successor statistics
+ * share a cluster, which bounds the header to at most MAX_CLUSTERS tables.
+ * The context is reset to byte 0 at the start of every block, so blocks stay
+ * independently decodable.
+ *
+ * All cluster codes sit in one flat table indexed by `(cluster << 8) |
+ * symbol`, and `offsets` maps each context straight to its cluster's row, so
+ * switching tables is a single array load in the inner loop.
+ *
+ * Header layout, as a '0'/'1' string:
+ *
+ *   8 bits   cluster count
+ *   256 * ceil(log2(count)) bits of cluster per context
+ *
+ * followed by the CanonicalCodes header of every cluster, in order.
+ */
+public final class ContextModel {
+
+	public static final int CONTEXTS = ByteHistogram.ALPHABET;
+
+	public static final int MAX_CLUSTERS = 32;
+
+	private static final int CLUSTER_COUNT_BITS = 8;
+
+	private static final int ROUNDS = 10;
+
+	private final int[] cluster;
+
+	private final int[][] clusterLengths;
+
+	private final int[] offsets = new int[CONTEXTS];
+
+	private final long[] codes;
+
+	private final int[] lengths;
+
+	private final int maxLength;
+
+	private ContextModel(int[] cluster, int[][] clusterLengths) {
+		this.cluster = cluster;
+		this.clusterLengths = clusterLengths;
+		this.codes = new long[clusterLengths.length * CONTEXTS];
+		this.lengths = new int[clusterLengths.length * CONTEXTS];
+		int maxLength = 0;
+		for (int k = 0; k < clusterLengths.length; k++) {
+			System.arraycopy(CanonicalCodes.codes(clusterLengths[k]), 0, codes, k * CONTEXTS, CONTEXTS);
+			System.arraycopy(clusterLengths[k], 0, lengths, k * CONTEXTS, CONTEXTS);
+		}
+		for (int length : lengths) {
+			maxLength = Math.max(maxLength, length);
+		}
+		for (int context = 0; context < CONTEXTS; context++) {
+			offsets[context] = cluster[context] * CONTEXTS;
+		}
+		this.maxLength = maxLength;
+	}
+
+	/*
+	 * Counts every (preceding byte, byte) pair of `input` into a flat
+	 * long[CONTEXTS * ALPHABET] indexed by `(context << 8) | symbol`, with the
+	 * context reset every `blockSize` bytes as the encoder does.
+	 */
+	public static long[] count(File input, int blockSize) throws IOException {
+		long[] pairs = new long[CONTEXTS * ByteHistogram.ALPHABET];
+		ByteBuffer buffer = ByteBuffer.allocate(ByteHistogram.BUFFER_SIZE);
+		byte[] bytes = buffer.array();
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			int context = 0;
+			int left = blockSize;
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				for (int i = 0; i < read; i++) {
+					if (left-- == 0) {
+						context = 0;
+						left = blockSize - 1;
+					}
+					int symbol = bytes[i] & 0xFF;
+					pairs[(context << 8) | symbol]++;
+					context = symbol;
+				}
+				buffer.clear();
+			}
+		}
+		return pairs;
+	}
+
+	/*
+	 * The counts of every byte regardless of context.
+	 */
+	public static long[] symbolCounts(long[] pairs) {
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		for (int i = 0; i < pairs.length; i++) {
+			counts[i & 0xFF] += pairs[i];
+		}
+		return counts;
+	}
+
+	/*
+	 * Clusters the contexts of `pairs` and builds a code for each cluster,
+	 * of at most `maxLength` bits. Cluster counts of 1, 2, 4 and so on up to
+	 * MAX_CLUSTERS are tried, and the one with the fewest header and text
+	 * bits together wins.
+	 */
+	public static ContextModel build(long[] pairs, int maxLength) {
+		Integer[] active = activeContexts(pairs);
+		if (active.length == 0) {
+			return new ContextModel(new int[CONTEXTS], new int[0][]);
+		}
+		ContextModel best = null;
+		long bestBits = Long.MAX_VALUE;
+		for (int k = 1; k <= Math.min(MAX_CLUSTERS, active.length); k *= 2) {
+			ContextModel model = clustered(pairs, active, k, maxLength);
+			long bits = model.header().length() + model.encodedBits(pairs);
+			if (bits < bestBits) {
+				best = model;
+				bestBits = bits;
+			}
+		}
+		return best;
+	}
+
+	public static ContextModel fromHeader(String header) {
+		int clusters = CanonicalCodes.readBits(header, 0, CLUSTER_COUNT_BITS);
+		int at = CLUSTER_COUNT_BITS;
+		int indexBits = indexBits(clusters);
+		int[] cluster = new int[CONTEXTS];
+		for (int context = 0; context < CONTEXTS; context++) {
+			cluster[context] = CanonicalCodes.readBits(header, at, indexBits);
+			at += indexBits;
+			if (cluster[context] >= Math.max(1, clusters)) {
+				throw new IllegalArgumentException("Context " + context + " maps to a missing cluster");
+			}
+		}
+		int[][] clusterLengths = new int[clusters][CanonicalCodes.ALPHABET];
+		for (int k = 0; k < clusters; k++) {
+			at = CanonicalCodes.decodeHeader(header, at, clusterLengths[k]);
+		}
+		return new ContextModel(cluster, clusterLengths);
+	}
+
+	public String header() {
+		StringBuilder header = new StringBuilder();
+		CanonicalCodes.appendBits(header, clusterLengths.length, CLUSTER_COUNT_BITS);
+		int indexBits = indexBits(clusterLengths.length);
+		for (int context = 0; context < CONTEXTS; context++) {
+			CanonicalCodes.appendBits(header, cluster[context], indexBits);
+		}
+		for (int[] lengths : clusterLengths) {
+			header.append(CanonicalCodes.encodeHeader(lengths));
+		}
+		return header.toString();
+	}
+
+	public int clusters() {
+		return clusterLengths.length;
+	}
+
+	public int maxLength() {
+		return maxLength;
+	}
+
+	/*
+	 * Number of bits an input with the given pair counts encodes to.
+	 */
+	public long encodedBits(long[] pairs) {
+		long bits = 0;
+		for (int i = 0; i < pairs.length; i++) {
+			if (pairs[i] > 0) {
+				bits += pairs[i] * lengths[offsets[i >>> 8] | (i & 0xFF)];
+			}
+		}
+		return bits;
+	}
+
+	/*
+	 * The most bytes `symbols` symbols can encode to.
+	 */
+	public int maxPayload(int symbols) {
+		return (int) ((symbols * (long) maxLength + 7) / 8) + 8;
+	}
+
+	/*
+	 * Packs `src[from, to)` into `dst`, starting from context 0. Returns the
+	 * number of bits.
+	 */
+	public long encodeBlock(byte[] src, int from, int to, byte[] dst) {
+		final long[] codes = this.codes;
+		final int[] lengths = this.lengths;
+		final int[] offsets = this.offsets;
+		try {
+			BitWriter writer = new BitWriter(dst);
+			int offset = offsets[0];
+			for (int i = from; i < to; i++) {
+				int symbol = src[i] & 0xFF;
+				writer.writeBits(codes[offset | symbol], lengths[offset | symbol]);
+				offset = offsets[symbol];
+			}
+			long bits = writer.tally();
+			writer.close();
+			return bits;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * The decode table of every context, shared between contexts of one
+	 * cluster. Build once and pass to decodeBlock.
+	 */
+	public DecodeTable[] decodeTables() {
+		DecodeTable[] byCluster = new DecodeTable[clusterLengths.length];
+		for (int k = 0; k < byCluster.length; k++) {
+			byCluster[k] = DecodeTable.fromLengths(clusterLengths[k]);
+		}
+		DecodeTable[] byContext = new DecodeTable[CONTEXTS];
+		for (int context = 0; context < CONTEXTS; context++) {
+			byContext[context] = byCluster.length == 0 ? null : byCluster[cluster[context]];
+		}
+		return byContext;
+	}
+
+	/*
+	 * Decodes `symbols` symbols from `in` into `dst`, starting from context 0.
+	 */
+	public static void decodeBlock(DecodeTable[] tables, BitReader in, byte[] dst, int symbols) throws IOException {
+		DecodeTable table = tables[0];
+		for (int i = 0; i < symbols; i++) {
+			int symbol = table.decodeSymbol(in);
+			dst[i] = (byte) symbol;
+			table = tables[symbol];
+		}
+	}
+
+	private static Integer[] activeContexts(long[] pairs) {
+		long[] totals = new long[CONTEXTS];
+		for (int i = 0; i < pairs.length; i++) {
+			totals[i >>> 8] += pairs[i];
+		}
+		Integer[] active = new Integer[ByteHistogram.distinct(totals)];
+		for (int context = 0, i = 0; context < CONTEXTS; context++) {
+			if (totals[context] > 0) {
+				active[i++] = context;
+			}
+		}
+		Arrays.sort(active, (a, b) -> totals[a] != totals[b] ? Long.compare(totals[b], totals[a]) : Integer.compare(a, b));
+		return active;
+	}
+
+	/*
+	 * Groups the active contexts into at most `k` clusters by k-means under
+	 * coding cost, seeded with the `k` heaviest contexts: each context moves
+	 * to the cluster whose smoothed statistics code it in the fewest bits,
+	 * until none moves.
+	 */
+	private static ContextModel clustered(long[] pairs, Integer[] active, int k, int maxLength) {
+		int[] cluster = new int[CONTEXTS];
+		for (int i = 0; i < k; i++) {
+			cluster[active[i]] = i;
+		}
+		Integer[] members = Arrays.copyOf(active, k);
+		double[][] cost = new double[k][ByteHistogram.ALPHABET];
+		for (int round = 0; round < ROUNDS; round++) {
+			long[][] clusterCounts = sum(pairs, members, cluster, k);
+			for (int c = 0; c < k; c++) {
+				long total = 0;
+				for (long count : clusterCounts[c]) {
+					total += count;
+				}
+				for (int symbol = 0; symbol < ByteHistogram.ALPHABET; symbol++) {
+					cost[c][symbol] = -Math.log((clusterCounts[c][symbol] + 0.5) / (total + 0.5 * ByteHistogram.ALPHABET));
+				}
+			}
+			boolean moved = false;
+			members = active;
+			for (int i = 0; i < active.length; i++) {
+				int context = active[i];
+				int nearest = cluster[context];
+				double nearestCost = Double.MAX_VALUE;
+				for (int c = 0; c < k; c++) {
+					double bits = 0;
+					for (int symbol = 0; symbol < ByteHistogram.ALPHABET; symbol++) {
+						bits += pairs[(context << 8) | symbol] * cost[c][symbol];
+					}
+					if (bits < nearestCost) {
+						nearest = c;
+						nearestCost = bits;
+					}
+				}
+				moved |= nearest != cluster[context];
+				cluster[context] = nearest;
+			}
+			if (!moved && round > 0) {
+				break;
+			}
+		}
+		long[][] clusterCounts = sum(pairs, active, cluster, k);
+		int[] renumbered = new int[k];
+		int used = 0;
+		for (int c = 0; c < k; c++) {
+			renumbered[c] = ByteHistogram.distinct(clusterCounts[c]) > 0 ? used++ : -1;
+		}
+		int[][] clusterLengths = new int[used][];
+		for (int c = 0; c < k; c++) {
+			if (renumbered[c] >= 0) {
+				clusterLengths[renumbered[c]] = LengthLimitedCodes.lengths(clusterCounts[c], maxLength);
+			}
+		}
+		for (int context = 0; context < CONTEXTS; context++) {
+			cluster[context] = Math.max(0, renumbered[cluster[context]]);
+		}
+		return new ContextModel(cluster, clusterLengths);
+	}
+
+	private static long[][] sum(long[] pairs, Integer[] active, int[] cluster, int k) {
+		long[][] sums = new long[k][ByteHistogram.ALPHABET];
+		for (int context : active) {
+			long[] row = sums[cluster[context]];
+			for (int symbol = 0; symbol < ByteHistogram.ALPHABET; symbol++) {
+				row[symbol] += pairs[(context << 8) | symbol];
+			}
+		}
+		return sums;
+	}
+
+	private static int indexBits(int clusters) {
+		return clusters <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(clusters - 1);
+	}
+}
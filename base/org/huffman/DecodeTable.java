@@ -0,0 +1,282 @@
+package org.huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/*
+ * Lookup-table decoder for a prefix code.
+ *
+ * The root table is indexed by the next `rootBits` bits of the stream and
+ * resolves any code of at most that length with a single array access. Codes
+ * that are longer hang off a link entry that points at a second-level table
+ * indexed by the following SUB_BITS bits, and so on for as many levels as the
+ * deepest code needs, so every tree `readTree` can produce is decodable.
+ *
+ * Entries are packed ints: `(symbol << 8) | bitsUsedAtThisLevel` for a leaf,
+ * LINK | offset for a link and 0 for a bit pattern that is not a code.
+ *
+ * multiSymbol() adds a front table indexed by the next MULTI_BITS bits whose
+ * long entries hold every code that lies wholly inside that window, up to
+ * MAX_SYMBOLS of them: the symbols a byte each from the low end, their number
+ * at COUNT_SHIFT and the bits they take at BITS_SHIFT. A window that starts
+ * with a longer code holds no symbols and falls through to the tables above.
+ */
+public final class DecodeTable {
+
+	public static final int ROOT_BITS = 11;
+
+	static final int SUB_BITS = 8;
+
+	private static final int LINK = 1 << 31;
+
+	private static final int LENGTH_MASK = 0xFF;
+
+	public static final int MULTI_BITS = 12;
+
+	public static final int MAX_SYMBOLS = 4;
+
+	static final int COUNT_SHIFT = 32;
+
+	static final int BITS_SHIFT = 40;
+
+	private final int rootBits;
+
+	private int[] entries;
+
+	private int size;
+
+	private final long[] multi;
+
+	private DecodeTable(int maxLength) {
+		this.rootBits = Math.max(1, Math.min(ROOT_BITS, maxLength));
+		this.entries = new int[(1 << rootBits) + (1 << SUB_BITS)];
+		this.size = 1 << rootBits;
+		this.multi = null;
+	}
+
+	private DecodeTable(DecodeTable single, long[] multi) {
+		this.rootBits = single.rootBits;
+		this.entries = single.entries;
+		this.size = single.size;
+		this.multi = multi;
+	}
+
+	/*
+	 * Builds the table from the '0'/'1' path of every symbol, as produced by a
+	 * walk over a HuffmanTree.
+	 */
+	public static DecodeTable fromCodes(Map<Character, String> codes) {
+		int maxLength = 0;
+		for (String path : codes.values()) {
+			maxLength = Math.max(maxLength, path.length());
+		}
+		DecodeTable table = new DecodeTable(maxLength);
+		for (Entry<Character, String> entry : codes.entrySet()) {
+			table.insert(entry.getKey(), entry.getValue());
+		}
+		return table;
+	}
+
+	/*
+	 * Builds the table for the canonical code with the given per-symbol
+	 * lengths, without going through a tree.
+	 */
+	public static DecodeTable fromLengths(int[] lengths) {
+		long[] codes = CanonicalCodes.codes(lengths);
+		int maxLength = 0;
+		for (int length : lengths) {
+			maxLength = Math.max(maxLength, length);
+		}
+		DecodeTable table = new DecodeTable(maxLength);
+		for (int symbol = 0; symbol < lengths.length; symbol++) {
+			if (lengths[symbol] > 0) {
+				table.insert(symbol, CanonicalCodes.toPath(codes[symbol], lengths[symbol]));
+			}
+		}
+		return table;
+	}
+
+	public int rootBits() {
+		return rootBits;
+	}
+
+	/*
+	 * The same code with a multi-symbol front table, so that runs of short
+	 * codes come out several per lookup. Codes too long to ever share a
+	 * window keep the plain table.
+	 */
+	public DecodeTable multiSymbol() {
+		if (multi != null) {
+			return this;
+		}
+		long[] front = new long[1 << MULTI_BITS];
+		int widest = 0;
+		for (int window = 0; window < front.length; window++) {
+			long symbols = 0;
+			int count = 0;
+			int used = 0;
+			while (count < MAX_SYMBOLS) {
+				long pattern = ((long) window << (64 - MULTI_BITS)) << used;
+				int code = resolve(pattern, MULTI_BITS - used);
+				if (code == 0) {
+					break;
+				}
+				symbols |= (long) (code >>> 8) << (8 * count++);
+				used += code & LENGTH_MASK;
+			}
+			front[window] = symbols | ((long) count << COUNT_SHIFT) | ((long) used << BITS_SHIFT);
+			widest = Math.max(widest, count);
+		}
+		return widest > 1 ? new DecodeTable(this, front) : this;
+	}
+
+	public boolean isMultiSymbol() {
+		return multi != null;
+	}
+
+	/*
+	 * The multi-symbol front table, or null. Callers must not modify it.
+	 */
+	long[] front() {
+		return multi;
+	}
+
+	/*
+	 * Decodes every code found between bit `bitPos` (inclusive) and
+	 * `bitLimit` (exclusive) of `src`, reading the bits most significant
+	 * first.
+	 */
+	public byte[] decodeAll(byte[] src, long bitPos, long bitLimit) throws IOException {
+		BitReader in = new BitReader(src, 0, src.length);
+		in.skipBits(bitPos);
+		byte[] out = new byte[(int) Math.min(Integer.MAX_VALUE - 8, (bitLimit - bitPos) / 4 + 16)];
+		int count = 0;
+		while (in.position() < bitLimit) {
+			if (count == out.length) {
+				out = Arrays.copyOf(out, out.length * 2);
+			}
+			count += decode(in, bitLimit, out, count, out.length - count);
+		}
+		return Arrays.copyOf(out, count);
+	}
+
+	/*
+	 * Decodes codes from `in` until it has consumed `bitLimit` bits in total
+	 * or `len` symbols have been stored into `dst` from `off`. Returns the
+	 * number of symbols stored.
+	 */
+	public int decode(BitReader in, long bitLimit, byte[] dst, int off, int len) throws IOException {
+		final long[] multi = this.multi;
+		int count = 0;
+		while (count < len && in.position() < bitLimit) {
+			if (multi != null) {
+				long front = multi[(int) in.peekBits(MULTI_BITS)];
+				int symbols = (int) (front >>> COUNT_SHIFT) & 0xFF;
+				int used = (int) (front >>> BITS_SHIFT);
+				if (symbols > 0 && len - count >= MAX_SYMBOLS && in.position() + used <= bitLimit) {
+					// all four slots are written; only `symbols` of them count
+					int at = off + count;
+					dst[at] = (byte) front;
+					dst[at + 1] = (byte) (front >>> 8);
+					dst[at + 2] = (byte) (front >>> 16);
+					dst[at + 3] = (byte) (front >>> 24);
+					count += symbols;
+					in.skipBits(used);
+					continue;
+				}
+			}
+			dst[off + count++] = (byte) decodeSymbol(in);
+		}
+		return count;
+	}
+
+	/*
+	 * Decodes the one code at the reader's position, through the
+	 * single-symbol tables.
+	 */
+	public int decodeSymbol(BitReader in) throws IOException {
+		int bits = rootBits;
+		int entry = entries[(int) in.peekBits(bits)];
+		while (entry < 0) {
+			in.skipBits(bits);
+			bits = SUB_BITS;
+			entry = entries[(entry & ~LINK) + (int) in.peekBits(bits)];
+		}
+		if (entry == 0) {
+			throw new IOException("Invalid code at bit " + in.position());
+		}
+		in.skipBits(entry & LENGTH_MASK);
+		return entry >>> 8;
+	}
+
+	/*
+	 * Looks up the code at the top of `pattern`, of which only the first
+	 * `available` bits are known. Returns `(symbol << 8) | length`, or 0 when
+	 * the code is not a whole code within the known bits.
+	 */
+	int resolve(long pattern, int available) {
+		int used = 0;
+		int bits = rootBits;
+		int entry = entries[(int) (pattern >>> (64 - bits))];
+		while (entry < 0) {
+			used += bits;
+			bits = SUB_BITS;
+			entry = entries[(entry & ~LINK) + (int) ((pattern << used) >>> (64 - bits))];
+		}
+		int length = used + (entry & LENGTH_MASK);
+		if (entry == 0 || length > available) {
+			return 0;
+		}
+		return (entry & ~LENGTH_MASK) | length;
+	}
+
+	private void insert(int symbol, String path) {
+		if (path.isEmpty()) {
+			throw new IllegalArgumentException("Empty code for symbol " + symbol);
+		}
+		int base = 0;
+		int bits = rootBits;
+		int at = 0;
+		while (path.length() - at > bits) {
+			int index = base + bitsOf(path, at, bits);
+			int entry = entries[index];
+			if (entry == 0) {
+				entry = LINK | allocate();
+				entries[index] = entry;
+			} else if (entry > 0) {
+				throw new IllegalArgumentException("Codes are not prefix-free at symbol " + symbol);
+			}
+			base = entry & ~LINK;
+			at += bits;
+			bits = SUB_BITS;
+		}
+		int remaining = path.length() - at;
+		int first = base + (bitsOf(path, at, remaining) << (bits - remaining));
+		int last = first + (1 << (bits - remaining));
+		for (int i = first; i < last; i++) {
+			if (entries[i] != 0) {
+				throw new IllegalArgumentException("Codes are not prefix-free at symbol " + symbol);
+			}
+			entries[i] = (symbol << 8) | remaining;
+		}
+	}
+
+	private int allocate() {
+		int offset = size;
+		size += 1 << SUB_BITS;
+		if (size > entries.length) {
+			entries = Arrays.copyOf(entries, Math.max(size, entries.length * 2));
+		}
+		return offset;
+	}
+
+	private static int bitsOf(String path, int from, int count) {
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			value = (value << 1) | (path.charAt(i) == '1' ? 1 : 0);
+		}
+		return value;
+	}
+}
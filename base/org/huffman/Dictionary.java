@@ -0,0 +1,212 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/*
+ * A canonical code trained on a sample corpus and stored apart from the
+ * files it encodes, which then carry only its 32-bit ID instead of a code
+ * header and need no histogram pass of their own. Every byte value gets a
+ * code, seen in training or not.
+ *
+ * The ID is the CRC32C of the code lengths, so it names the code itself.
+ * Dictionaries are loaded once per JVM: load() caches by file and
+ * registers the result for forId().
+ *
+ * File layout, all fields big-endian:
+ *
+ *   4 bytes  MAGIC
+ *   1 byte   VERSION
+ *   4 bytes  ID
+ *   256 bytes  code length of every byte value
+ *   4 bytes  CRC32C of everything above
+ */
+public final class Dictionary {
+
+	public static final byte[] MAGIC = { 'H', 'U', 'F', 'D' };
+
+	public static final int VERSION = 1;
+
+	public static final int DEFAULT_MAX_LENGTH = 16;
+
+	public static final int ID_BITS = 32;
+
+	private static final Map<Integer, Dictionary> BY_ID = new ConcurrentHashMap<>();
+
+	private static final Map<Path, Dictionary> BY_PATH = new ConcurrentHashMap<>();
+
+	private final int id;
+
+	private final int[] lengths;
+
+	private final CodeTable codeTable;
+
+	private volatile DecodeTable decodeTable;
+
+	private Dictionary(int[] lengths) {
+		this.lengths = lengths;
+		this.codeTable = CodeTable.canonical(lengths);
+		this.id = checksum(lengths);
+	}
+
+	/*
+	 * Trains on every regular file under `samples`, which may also be a
+	 * single file, with codes of at most `maxLength` bits.
+	 */
+	public static Dictionary train(File samples, int maxLength) throws IOException {
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(samples.toPath())) {
+			files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		if (files.isEmpty()) {
+			throw new IOException("No sample files under " + samples);
+		}
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		for (Path file : files) {
+			long[] fileCounts = ByteHistogram.count(file.toFile());
+			for (int symbol = 0; symbol < counts.length; symbol++) {
+				counts[symbol] += fileCounts[symbol];
+			}
+		}
+		return fromCounts(counts, maxLength);
+	}
+
+	/*
+	 * The dictionary for the given training counts. Each count is raised by
+	 * one so that bytes missing from the samples still get a code.
+	 */
+	public static Dictionary fromCounts(long[] counts, int maxLength) {
+		long[] smoothed = new long[ByteHistogram.ALPHABET];
+		for (int symbol = 0; symbol < smoothed.length; symbol++) {
+			smoothed[symbol] = counts[symbol] + 1;
+		}
+		return new Dictionary(LengthLimitedCodes.lengths(smoothed, Math.max(8, maxLength)));
+	}
+
+	/*
+	 * Loads the dictionary in `file`, or returns the copy loaded earlier.
+	 */
+	public static Dictionary load(File file) throws IOException {
+		Path path = file.toPath().toRealPath();
+		Dictionary dictionary = BY_PATH.get(path);
+		if (dictionary == null) {
+			dictionary = read(path);
+			BY_ID.putIfAbsent(dictionary.id, dictionary);
+			dictionary = BY_ID.get(dictionary.id);
+			BY_PATH.putIfAbsent(path, dictionary);
+		}
+		return dictionary;
+	}
+
+	/*
+	 * The loaded dictionary with the given ID, or null if none was loaded.
+	 */
+	public static Dictionary forId(int id) {
+		return BY_ID.get(id);
+	}
+
+	public void save(File file) throws IOException {
+		ByteBuffer fields = ByteBuffer.allocate(MAGIC.length + 1 + 4 + ByteHistogram.ALPHABET + 4);
+		fields.put(MAGIC).put((byte) VERSION).putInt(id);
+		for (int length : lengths) {
+			fields.put((byte) length);
+		}
+		CRC32C crc = new CRC32C();
+		crc.update(fields.array(), 0, fields.position());
+		fields.putInt((int) crc.getValue());
+		Files.write(file.toPath(), fields.array());
+	}
+
+	public int id() {
+		return id;
+	}
+
+	public CodeTable codeTable() {
+		return codeTable;
+	}
+
+	/*
+	 * The decode table, with a multi-symbol front table, built on first use
+	 * and shared from then on.
+	 */
+	public DecodeTable decodeTable() {
+		DecodeTable table = decodeTable;
+		if (table == null) {
+			table = DecodeTable.fromLengths(lengths).multiSymbol();
+			decodeTable = table;
+		}
+		return table;
+	}
+
+	/*
+	 * The ID as the '0'/'1' header of the files encoded with it.
+	 */
+	public String header() {
+		StringBuilder header = new StringBuilder(ID_BITS);
+		for (int i = ID_BITS - 1; i >= 0; i--) {
+			header.append(((id >>> i) & 1) == 0 ? '0' : '1');
+		}
+		return header.toString();
+	}
+
+	public static int idFromHeader(String header) {
+		if (header.length() != ID_BITS) {
+			throw new IllegalArgumentException("A dictionary reference is " + ID_BITS + " bits, not " + header.length());
+		}
+		return (int) Long.parseLong(header, 2);
+	}
+
+	private static Dictionary read(Path path) throws IOException {
+		byte[] bytes = Files.readAllBytes(path);
+		ByteBuffer fields = ByteBuffer.wrap(bytes);
+		if (bytes.length != MAGIC.length + 1 + 4 + ByteHistogram.ALPHABET + 4) {
+			throw new IOException(path + " is not a Huffman dictionary");
+		}
+		for (byte b : MAGIC) {
+			if (fields.get() != b) {
+				throw new IOException(path + " is not a Huffman dictionary");
+			}
+		}
+		int version = fields.get() & 0xFF;
+		if (version != VERSION) {
+			throw new IOException("Unsupported dictionary version " + version);
+		}
+		int id = fields.getInt();
+		int[] lengths = new int[ByteHistogram.ALPHABET];
+		for (int symbol = 0; symbol < lengths.length; symbol++) {
+			lengths[symbol] = fields.get() & 0xFF;
+		}
+		CRC32C crc = new CRC32C();
+		crc.update(bytes, 0, fields.position());
+		if (fields.getInt() != (int) crc.getValue()) {
+			throw new IOException(path + " fails its CRC32C check");
+		}
+		Dictionary dictionary;
+		try {
+			dictionary = new Dictionary(lengths);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(path + " holds invalid code lengths", e);
+		}
+		if (dictionary.id != id) {
+			throw new IOException(path + " does not match its ID");
+		}
+		return dictionary;
+	}
+
+	private static int checksum(int[] lengths) {
+		CRC32C crc = new CRC32C();
+		for (int length : lengths) {
+			crc.update(length);
+		}
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,188 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/*
+ * Compact layout for one small input coded with a trained Dictionary, such
+ * as a single JSON record, where the Container header and block frame would
+ * take more than the dictionary saves. All fields big-endian:
+ *
+ *   4 bytes  MAGIC
+ *   1 byte   VERSION
+ *   4 bytes  dictionary ID
+ *   1 to 3 bytes  size of the original input, an unsigned LEB128 varint
+ *   the codes, byte padded
+ *   4 bytes  CRC32C of everything above
+ *
+ * Inputs of up to MAX_SIZE bytes fit; larger ones take the Container with
+ * FLAG_DICTIONARY. As with the Container, the checksum is verified before
+ * anything is decoded.
+ */
+public final class DictionaryRecord {
+
+	public static final byte[] MAGIC = { 'H', 'U', 'F', 'R' };
+
+	public static final int VERSION = 1;
+
+	public static final int MAX_SIZE = ParallelEncoder.DEFAULT_BLOCK_SIZE;
+
+	private static final int FIXED_BYTES = MAGIC.length + 1 + 4;
+
+	private static final int MAX_VARINT_BYTES = 3;
+
+	private final int id;
+
+	private final int size;
+
+	private final byte[] header;
+
+	private DictionaryRecord(int id, int size, byte[] header) {
+		this.id = id;
+		this.size = size;
+		this.header = header;
+	}
+
+	/*
+	 * Encodes all of `input`, at most MAX_SIZE bytes, into `output` with the
+	 * codes of `dictionary`.
+	 */
+	public static void encode(File input, File output, Dictionary dictionary) throws IOException {
+		byte[] raw = Files.readAllBytes(input.toPath());
+		if (raw.length > MAX_SIZE) {
+			throw new IllegalArgumentException("Records hold at most " + MAX_SIZE + " bytes, not " + raw.length);
+		}
+		CodeTable table = dictionary.codeTable();
+		byte[] codes = new byte[(int) ((raw.length * (long) table.maxLength() + 7) / 8) + 8];
+		int codeBytes = (int) ((ParallelEncoder.encodeBlock(table, raw, 0, raw.length, codes) + 7) >>> 3);
+		ByteBuffer record = ByteBuffer.allocate(FIXED_BYTES + MAX_VARINT_BYTES + codeBytes + 4);
+		record.put(MAGIC).put((byte) VERSION).putInt(dictionary.id());
+		int value = raw.length;
+		while (value >= 0x80) {
+			record.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		record.put((byte) value);
+		record.put(codes, 0, codeBytes);
+		CRC32C crc = new CRC32C();
+		crc.update(record.array(), 0, record.position());
+		record.putInt((int) crc.getValue());
+		Files.write(output.toPath(), Arrays.copyOf(record.array(), record.position()));
+	}
+
+	/*
+	 * Whether the next bytes of `in` are MAGIC, without consuming them.
+	 */
+	public static boolean startsWithMagic(BitReader in) throws IOException {
+		return in.peekBits(32) == (ByteBuffer.wrap(MAGIC).getInt() & 0xFFFFFFFFL);
+	}
+
+	/*
+	 * Reads everything up to the codes. The checksum, which also covers
+	 * these fields, is checked by decode().
+	 */
+	public static DictionaryRecord readHeader(BitReader in) throws IOException {
+		byte[] header = new byte[FIXED_BYTES + MAX_VARINT_BYTES];
+		in.readBytes(header, 0, FIXED_BYTES);
+		ByteBuffer fields = ByteBuffer.wrap(header);
+		for (byte b : MAGIC) {
+			if (fields.get() != b) {
+				throw new IOException("Not a dictionary record");
+			}
+		}
+		int version = fields.get() & 0xFF;
+		if (version != VERSION) {
+			throw new IOException("Unsupported record version " + version);
+		}
+		int id = fields.getInt();
+		int size = 0;
+		int length = FIXED_BYTES;
+		for (int shift = 0; ; shift += 7) {
+			if (length == header.length) {
+				throw new IOException("Corrupt record size");
+			}
+			int b = in.readByte();
+			header[length++] = (byte) b;
+			size |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+		}
+		if (size > MAX_SIZE) {
+			throw new IOException("Corrupt record size " + size);
+		}
+		return new DictionaryRecord(id, size, Arrays.copyOf(header, length));
+	}
+
+	/*
+	 * The ID of the dictionary the record was coded with.
+	 */
+	public int id() {
+		return id;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Verifies and decodes the rest of `in` into `out` with the table of the
+	 * record's dictionary. Returns the counts of the decoded bytes.
+	 */
+	public long[] decode(BitReader in, DecodeTable table, WritableByteChannel out) throws IOException {
+		byte[] rest = new byte[(int) ((size * (long) CanonicalCodes.MAX_LENGTH + 7) / 8) + 4];
+		int length = 0;
+		while (!in.isEndOfStream()) {
+			if (length == rest.length) {
+				throw new IOException("Unexpected data after the record");
+			}
+			rest[length++] = (byte) in.readByte();
+		}
+		int codeBytes = length - 4;
+		if (codeBytes < 0) {
+			throw new IOException("Record ends early");
+		}
+		CRC32C crc = new CRC32C();
+		crc.update(header, 0, header.length);
+		crc.update(rest, 0, codeBytes);
+		if ((int) crc.getValue() != ByteBuffer.wrap(rest, codeBytes, 4).getInt()) {
+			throw new IOException("Record fails its CRC32C check");
+		}
+		byte[] decoded = new byte[size];
+		BitReader text = new BitReader(rest, 0, codeBytes);
+		long end = 8L * codeBytes;
+		if (table.decode(text, end, decoded, 0, size) != size || text.position() > end
+				|| (size > 0 && text.position() <= end - 8)) {
+			throw new IOException("Record does not decode to " + size + " symbols");
+		}
+		ByteBuffer src = ByteBuffer.wrap(decoded);
+		while (src.hasRemaining()) {
+			out.write(src);
+		}
+		return ByteHistogram.count(decoded);
+	}
+
+	/*
+	 * The codes of a record, as a '0'/'1' string with the padding of the
+	 * last byte, for display.
+	 */
+	public static String textBits(ReadableByteChannel channel) throws IOException {
+		try (BitReader in = new BitReader(channel)) {
+			readHeader(in);
+			StringBuilder text = new StringBuilder();
+			while (!in.isEndOfStream()) {
+				int b = in.readByte();
+				for (int i = 7; i >= 0; i--) {
+					text.append(((b >>> i) & 1) == 0 ? '0' : '1');
+				}
+			}
+			return text.substring(0, Math.max(0, text.length() - 32));
+		}
+	}
+}
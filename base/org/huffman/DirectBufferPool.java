@@ -0,0 +1,92 @@
+package org.huffman;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * A thread-safe pool of direct buffers, so channels opened and closed per
+ * request do not pay for allocateDirect, and for the native memory it holds
+ * until the next GC, every time.
+ *
+ * Capacities are rounded up to a power of two, and each size class keeps at
+ * most `maxPerSize` idle buffers; releases beyond that are left to the GC.
+ * The pool knows which buffers are checked out, so releasing one twice, or
+ * one it never handed out, fails instead of giving it to two owners.
+ */
+public final class DirectBufferPool {
+
+	/*
+	 * The pool the channel adapters use unless given another.
+	 */
+	public static final DirectBufferPool SHARED = new DirectBufferPool(16);
+
+	private static final int SIZE_CLASSES = 32;
+
+	private final int maxPerSize;
+
+	private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+
+	private final AtomicInteger[] idle;
+
+	// by identity, as ByteBuffer equality compares contents
+	private final Set<ByteBuffer> checkedOut = Collections.synchronizedSet(
+			Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>()));
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public DirectBufferPool(int maxPerSize) {
+		if (maxPerSize < 0) {
+			throw new IllegalArgumentException("Negative pool size " + maxPerSize);
+		}
+		this.maxPerSize = maxPerSize;
+		this.free = new ConcurrentLinkedQueue[SIZE_CLASSES];
+		this.idle = new AtomicInteger[SIZE_CLASSES];
+		for (int i = 0; i < SIZE_CLASSES; i++) {
+			free[i] = new ConcurrentLinkedQueue<>();
+			idle[i] = new AtomicInteger();
+		}
+	}
+
+	/*
+	 * A cleared direct buffer of at least `capacity` bytes, limited to
+	 * `capacity`.
+	 */
+	public ByteBuffer acquire(int capacity) {
+		int sizeClass = sizeClass(capacity);
+		ByteBuffer buffer = free[sizeClass].poll();
+		if (buffer != null) {
+			idle[sizeClass].decrementAndGet();
+			buffer.clear();
+		} else {
+			buffer = ByteBuffer.allocateDirect(1 << sizeClass);
+		}
+		buffer.limit(capacity);
+		checkedOut.add(buffer);
+		return buffer;
+	}
+
+	/*
+	 * Hands a buffer from acquire() back. It must not be used afterwards.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (!checkedOut.remove(buffer)) {
+			throw new IllegalArgumentException("Buffer released twice or not from this pool");
+		}
+		int sizeClass = Integer.numberOfTrailingZeros(buffer.capacity());
+		if (idle[sizeClass].incrementAndGet() <= maxPerSize) {
+			free[sizeClass].offer(buffer);
+		} else {
+			idle[sizeClass].decrementAndGet();
+		}
+	}
+
+	private static int sizeClass(int capacity) {
+		if (capacity < 1 || capacity > 1 << (SIZE_CLASSES - 2)) {
+			throw new IllegalArgumentException("Pooled buffers hold 1 to " + (1 << (SIZE_CLASSES - 2)) + " bytes");
+		}
+		return 32 - Integer.numberOfLeadingZeros(capacity - 1);
+	}
+}
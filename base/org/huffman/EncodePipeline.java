@@ -0,0 +1,160 @@
+package org.huffman;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Reads, encodes and writes blocks in three overlapping stages: a reader
+ * thread fills blocks from the channel, `workers` threads encode them, and
+ * the calling thread hands the encoded blocks to a FrameSink in input order.
+ *
+ * Blocks are a fixed set of source and encoded buffers, allocated once per
+ * run, that circulate from a free queue through the stages and back. Only
+ * the buffers are reused: a BlockEncoder may still allocate its own small
+ * per-block state. When the writer falls behind, the free queue empties and
+ * the reader waits; when the reader falls behind, the writer waits on the
+ * next block in order.
+ */
+final class EncodePipeline {
+
+	private static final int BLOCKS_PER_WORKER = 2;
+
+	/*
+	 * Encodes `src[0, length)` into `dst` and returns the number of bits.
+	 */
+	interface BlockEncoder {
+
+		long encode(byte[] src, int length, byte[] dst) throws IOException;
+	}
+
+	/*
+	 * Takes encoded blocks in input order. `encoded` is only valid for the
+	 * duration of the call.
+	 */
+	interface FrameSink {
+
+		void write(byte[] encoded, int symbols, long bits) throws IOException;
+	}
+
+	private final int workers;
+
+	private final int blockSize;
+
+	private final int maxPayload;
+
+	private final BlockEncoder encoder;
+
+	/*
+	 * `maxPayload` is the most bytes the encoding of one block can take.
+	 */
+	EncodePipeline(int workers, int blockSize, int maxPayload, BlockEncoder encoder) {
+		this.workers = workers;
+		this.blockSize = blockSize;
+		this.maxPayload = maxPayload;
+		this.encoder = encoder;
+	}
+
+	/*
+	 * Encodes everything left in `in` into `sink`, one block at a time.
+	 */
+	void run(ReadableByteChannel in, FrameSink sink) throws IOException {
+		int depth = workers * BLOCKS_PER_WORKER + 1;
+		BlockingQueue<Block> free = new ArrayBlockingQueue<>(depth);
+		for (int i = 0; i < depth; i++) {
+			free.add(new Block(blockSize, maxPayload));
+		}
+		BlockingQueue<Future<Block>> ordered = new ArrayBlockingQueue<>(depth + 1);
+		ExecutorService encoders = Executors.newFixedThreadPool(workers);
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> reading = reader.submit(() -> {
+				read(in, free, ordered, encoders);
+				return null;
+			});
+			for (Future<Block> next = ordered.take(); ; next = ordered.take()) {
+				Block block = next.get();
+				if (block == null) {
+					break;
+				}
+				sink.write(block.encoded, block.length, block.bits);
+				free.put(block);
+			}
+			reading.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while encoding");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Encoding failed", cause);
+		} finally {
+			reader.shutdownNow();
+			encoders.shutdownNow();
+		}
+	}
+
+	/*
+	 * The reader stage. Every filled block goes to the encoders and its
+	 * future to the writer, in order; a completed null future ends the run.
+	 * A read failure ends it too, through a failed future.
+	 */
+	private void read(ReadableByteChannel in, BlockingQueue<Block> free, BlockingQueue<Future<Block>> ordered,
+			ExecutorService encoders) throws InterruptedException {
+		try {
+			while (true) {
+				Block block = free.take();
+				ByteBuffer buffer = ByteBuffer.wrap(block.source);
+				while (buffer.hasRemaining() && in.read(buffer) != -1) {
+					// keep filling the block
+				}
+				block.length = buffer.position();
+				if (block.length == 0) {
+					break;
+				}
+				ordered.put(encoders.submit(() -> {
+					block.bits = encoder.encode(block.source, block.length, block.encoded);
+					return block;
+				}));
+				if (block.length < blockSize) {
+					break;
+				}
+			}
+			ordered.put(CompletableFuture.completedFuture(null));
+		} catch (IOException e) {
+			CompletableFuture<Block> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			ordered.put(failed);
+		}
+	}
+
+	private static final class Block {
+
+		final byte[] source;
+
+		final byte[] encoded;
+
+		int length;
+
+		long bits;
+
+		Block(int blockSize, int maxPayload) {
+			this.source = new byte[blockSize];
+			this.encoded = new byte[maxPayload];
+		}
+	}
+}
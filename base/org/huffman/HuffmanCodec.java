@@ -0,0 +1,206 @@
+package org.huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/*
+ * An immutable codec for one fixed code, safe to share between any number of
+ * threads. It works on heap and direct buffers alike, through absolute
+ * gets and puts, and keeps its bit window in locals, so encode and decode
+ * allocate nothing.
+ *
+ * A message is the symbol count as a big-endian int followed by the codes,
+ * most significant bit first, padded to a byte.
+ *
+ * Both methods consume from the position of `src` and append at the position
+ * of `dst`, and move the positions only on success.
+ */
+public final class HuffmanCodec {
+
+	/*
+	 * The longest code the bit window always has room for.
+	 */
+	public static final int MAX_LENGTH = BitReader.MAX_PEEK;
+
+	private static final int COUNT_BYTES = 4;
+
+	private final long[] codes;
+
+	private final int[] lengths;
+
+	private final int maxLength;
+
+	private final DecodeTable table;
+
+	private final long[] front;
+
+	private HuffmanCodec(int[] lengths) {
+		CodeTable code = CodeTable.canonical(lengths);
+		if (code.maxLength() > MAX_LENGTH) {
+			throw new IllegalArgumentException("Codes of " + code.maxLength() + " bits exceed " + MAX_LENGTH);
+		}
+		this.codes = code.codes();
+		this.lengths = code.lengths();
+		this.maxLength = code.maxLength();
+		this.table = DecodeTable.fromLengths(lengths).multiSymbol();
+		this.front = table.front();
+	}
+
+	/*
+	 * The codec for the canonical code with the given per-symbol lengths.
+	 */
+	public static HuffmanCodec fromLengths(int[] lengths) {
+		return new HuffmanCodec(lengths.clone());
+	}
+
+	/*
+	 * The codec for an optimal code for `counts`. Only bytes with a non-zero
+	 * count can be encoded.
+	 */
+	public static HuffmanCodec fromCounts(long[] counts) {
+		return new HuffmanCodec(LengthLimitedCodes.lengths(counts, MAX_LENGTH));
+	}
+
+	/*
+	 * The codec for a trained dictionary, which codes every byte.
+	 */
+	public static HuffmanCodec of(Dictionary dictionary) {
+		return new HuffmanCodec(dictionary.codeTable().lengths());
+	}
+
+	/*
+	 * The per-symbol code lengths, enough to rebuild the codec elsewhere.
+	 */
+	public int[] lengths() {
+		return lengths.clone();
+	}
+
+	/*
+	 * The most bytes a message of `symbols` symbols can take.
+	 */
+	public int maxEncodedLength(int symbols) {
+		return COUNT_BYTES + (int) ((symbols * (long) maxLength + 7) / 8);
+	}
+
+	/*
+	 * Encodes every remaining byte of `src` as one message into `dst`.
+	 * Returns the message length. Throws BufferOverflowException when `dst`
+	 * runs out of room and IllegalArgumentException on a byte without a
+	 * code.
+	 */
+	public int encode(ByteBuffer src, ByteBuffer dst) {
+		return encode(codes, lengths, src, dst);
+	}
+
+	/*
+	 * encode() for a code that is only ever encoded with, so no decode
+	 * table is built for it.
+	 */
+	static int encode(CodeTable table, ByteBuffer src, ByteBuffer dst) {
+		if (table.maxLength() > MAX_LENGTH) {
+			throw new IllegalArgumentException("Codes of " + table.maxLength() + " bits exceed " + MAX_LENGTH);
+		}
+		return encode(table.codes(), table.lengths(), src, dst);
+	}
+
+	private static int encode(long[] codes, int[] lengths, ByteBuffer src, ByteBuffer dst) {
+		int end = src.limit();
+		int start = dst.position();
+		int outLimit = dst.limit();
+		if (outLimit - start < COUNT_BYTES) {
+			throw new BufferOverflowException();
+		}
+		int out = start + COUNT_BYTES;
+		long accumulator = 0;
+		int pending = 0;
+		for (int i = src.position(); i < end; i++) {
+			int symbol = src.get(i) & 0xFF;
+			int length = lengths[symbol];
+			if (length == 0) {
+				throw new IllegalArgumentException("Byte " + symbol + " has no code");
+			}
+			accumulator = (accumulator << length) | codes[symbol];
+			pending += length;
+			while (pending >= 8) {
+				if (out == outLimit) {
+					throw new BufferOverflowException();
+				}
+				pending -= 8;
+				dst.put(out++, (byte) (accumulator >>> pending));
+			}
+		}
+		if (pending > 0) {
+			if (out == outLimit) {
+				throw new BufferOverflowException();
+			}
+			dst.put(out++, (byte) (accumulator << (8 - pending)));
+		}
+		dst.putInt(start, src.remaining());
+		src.position(end);
+		dst.position(out);
+		return out - start;
+	}
+
+	/*
+	 * Decodes the message at the position of `src` into `dst`. Returns the
+	 * number of symbols. Throws BufferOverflowException when `dst` cannot
+	 * hold them all and IOException on a corrupt or truncated message.
+	 */
+	public int decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+		final DecodeTable table = this.table;
+		final long[] front = this.front;
+		int start = src.position();
+		int end = src.limit();
+		if (end - start < COUNT_BYTES) {
+			throw new EOFException("Huffman message ends before its symbol count");
+		}
+		int symbols = src.getInt(start);
+		if (symbols < 0) {
+			throw new IOException("Corrupt symbol count " + symbols);
+		}
+		int out = dst.position();
+		if (dst.limit() - out < symbols) {
+			throw new BufferOverflowException();
+		}
+		int in = start + COUNT_BYTES;
+		long window = 0;
+		int windowBits = 0;
+		for (int count = 0; count < symbols; ) {
+			while (windowBits <= MAX_LENGTH && in < end) {
+				window |= (src.get(in++) & 0xFFL) << (56 - windowBits);
+				windowBits += 8;
+			}
+			if (front != null && symbols - count >= DecodeTable.MAX_SYMBOLS) {
+				long entry = front[(int) (window >>> (64 - DecodeTable.MULTI_BITS))];
+				int decoded = (int) (entry >>> DecodeTable.COUNT_SHIFT) & 0xFF;
+				int used = (int) (entry >>> DecodeTable.BITS_SHIFT);
+				if (decoded > 0 && used <= windowBits) {
+					// all four slots are written; only `decoded` of them count
+					dst.put(out, (byte) entry);
+					dst.put(out + 1, (byte) (entry >>> 8));
+					dst.put(out + 2, (byte) (entry >>> 16));
+					dst.put(out + 3, (byte) (entry >>> 24));
+					out += decoded;
+					count += decoded;
+					window <<= used;
+					windowBits -= used;
+					continue;
+				}
+			}
+			int code = table.resolve(window, windowBits);
+			if (code == 0) {
+				throw new IOException("Invalid or truncated code after symbol " + count);
+			}
+			dst.put(out++, (byte) (code >>> 8));
+			window <<= code & 0xFF;
+			windowBits -= code & 0xFF;
+			count++;
+		}
+		long consumed = 8L * (in - start - COUNT_BYTES) - windowBits;
+		src.position(start + COUNT_BYTES + (int) ((consumed + 7) >>> 3));
+		dst.position(out);
+		return symbols;
+	}
+}
@@ -0,0 +1,189 @@
+package org.huffman;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/*
+ * Decompresses a stream written by HuffmanOutputStream, in the manner of
+ * GZIPInputStream. A block is read and decoded only when the caller has
+ * consumed the one before, into buffers sized once from the block size in
+ * the stream header. Nothing past the end-of-stream frame is read from the
+ * underlying stream.
+ */
+public class HuffmanInputStream extends FilterInputStream {
+
+	private final byte[] frame;
+
+	private final byte[] decoded;
+
+	private final CRC32C crc = new CRC32C();
+
+	private final byte[] field = new byte[4];
+
+	private int position;
+
+	private int limit;
+
+	private boolean ended;
+
+	/*
+	 * Reads the stream header from `in`.
+	 */
+	public HuffmanInputStream(InputStream in) throws IOException {
+		super(in);
+		byte[] header = new byte[HuffmanOutputStream.MAGIC.length + 1 + 4];
+		readFully(header, 0, header.length);
+		ByteBuffer fields = ByteBuffer.wrap(header);
+		for (byte b : HuffmanOutputStream.MAGIC) {
+			if (fields.get() != b) {
+				throw new IOException("Not a Huffman stream");
+			}
+		}
+		int version = fields.get() & 0xFF;
+		if (version != HuffmanOutputStream.VERSION) {
+			throw new IOException("Unsupported stream version " + version);
+		}
+		int blockSize = fields.getInt();
+		if (blockSize < 1 || blockSize > Container.MAX_BLOCK_SIZE) {
+			throw new IOException("Corrupt stream header");
+		}
+		this.frame = new byte[2 + HuffmanOutputStream.MAX_HEADER_BYTES + 4
+				+ HuffmanOutputStream.maxCodeBytes(blockSize)];
+		this.decoded = new byte[blockSize];
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == limit && !nextBlock()) {
+			return -1;
+		}
+		return decoded[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (position == limit && !nextBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, limit - position);
+		System.arraycopy(decoded, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && (position < limit || nextBlock())) {
+			int step = (int) Math.min(n - skipped, limit - position);
+			position += step;
+			skipped += step;
+		}
+		return skipped;
+	}
+
+	/*
+	 * The bytes left in the current block, which can be read without
+	 * blocking.
+	 */
+	@Override
+	public int available() {
+		return limit - position;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		// not supported
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/*
+	 * Reads, verifies and decodes the next frame. Returns false at the end
+	 * of the stream.
+	 */
+	private boolean nextBlock() throws IOException {
+		if (ended) {
+			return false;
+		}
+		readFully(field, 0, 4);
+		int length = ByteBuffer.wrap(field).getInt();
+		if (length == 0) {
+			ended = true;
+			return false;
+		}
+		if (length < 2 + 4 || length > frame.length) {
+			throw new IOException("Corrupt frame length " + length);
+		}
+		readFully(field, 0, 4);
+		int checksum = ByteBuffer.wrap(field).getInt();
+		readFully(frame, 0, length);
+		crc.reset();
+		crc.update(frame, 0, length);
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("Frame fails its CRC32C check");
+		}
+		ByteBuffer fields = ByteBuffer.wrap(frame, 0, length);
+		try {
+			limit = readCodec(fields).decode(fields, ByteBuffer.wrap(decoded));
+		} catch (BufferOverflowException | BufferUnderflowException e) {
+			throw new IOException("Corrupt frame", e);
+		}
+		position = 0;
+		return limit > 0 || nextBlock();
+	}
+
+	/*
+	 * Reads a header put by HuffmanOutputStream.putHeader and returns the
+	 * codec it describes, leaving `frame` at the message that follows.
+	 */
+	static HuffmanCodec readCodec(ByteBuffer frame) throws IOException {
+		int headerBits = frame.getShort() & 0xFFFF;
+		int headerBytes = (headerBits + 7) >>> 3;
+		if (headerBytes > HuffmanOutputStream.MAX_HEADER_BYTES || headerBytes + 4 > frame.remaining()) {
+			throw new IOException("Corrupt frame header");
+		}
+		int start = frame.position();
+		StringBuilder header = new StringBuilder(headerBits);
+		for (int i = 0; i < headerBits; i++) {
+			header.append((frame.get(start + (i >>> 3)) & (0x80 >>> (i & 7))) == 0 ? '0' : '1');
+		}
+		frame.position(start + headerBytes);
+		try {
+			return HuffmanCodec.fromLengths(CanonicalCodes.decodeHeader(header.toString()));
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt code header", e);
+		}
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = in.read(b, off, len);
+			if (n < 0) {
+				throw new EOFException("Huffman stream ends early");
+			}
+			off += n;
+			len -= n;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package org.huffman;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/*
+ * Compresses everything written to it onto another stream, in the manner of
+ * GZIPOutputStream. Bytes are gathered into blocks; every block gets its own
+ * canonical code, limited to MAX_LENGTH bits, and is written as one frame.
+ * Memory is the block buffer and its worst-case encoding, whatever the
+ * length of the stream.
+ *
+ * Stream layout, all fields big-endian:
+ *
+ *   4 bytes  MAGIC
+ *   1 byte   VERSION
+ *   4 bytes  block size
+ *
+ * then one frame per block, and a frame length of 0 to end the stream:
+ *
+ *   4 bytes  frame length, counting the fields after the checksum
+ *   4 bytes  CRC32C of those fields
+ *   2 bytes  header bits, then the CanonicalCodes header packed and byte padded
+ *   a HuffmanCodec message: 4 bytes symbol count, then the codes byte padded
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+
+	public static final byte[] MAGIC = { 'H', 'U', 'F', 'S' };
+
+	public static final int VERSION = 1;
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+	public static final int MAX_LENGTH = 16;
+
+	/*
+	 * Bound on a packed CanonicalCodes header of MAX_LENGTH-bit codes.
+	 */
+	static final int MAX_HEADER_BYTES = 1024;
+
+	private final byte[] block;
+
+	private final byte[] encoded;
+
+	private final byte[] head = new byte[4 + 4 + 2 + MAX_HEADER_BYTES + 4];
+
+	private final long[] counts = new long[ByteHistogram.ALPHABET];
+
+	private final CRC32C crc = new CRC32C();
+
+	private int count;
+
+	private boolean finished;
+
+	public HuffmanOutputStream(OutputStream out) throws IOException {
+		this(out, DEFAULT_BLOCK_SIZE);
+	}
+
+	public HuffmanOutputStream(OutputStream out, int blockSize) throws IOException {
+		super(out);
+		if (blockSize < 1 || blockSize > Container.MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Blocks hold 1 to " + Container.MAX_BLOCK_SIZE + " bytes");
+		}
+		this.block = new byte[blockSize];
+		this.encoded = new byte[maxCodeBytes(blockSize)];
+		byte[] header = ByteBuffer.allocate(MAGIC.length + 1 + 4).put(MAGIC).put((byte) VERSION).putInt(blockSize)
+				.array();
+		out.write(header);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkOpen();
+		block[count++] = (byte) b;
+		if (count == block.length) {
+			writeBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		while (len > 0) {
+			int n = Math.min(len, block.length - count);
+			System.arraycopy(b, off, block, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == block.length) {
+				writeBlock();
+			}
+		}
+	}
+
+	/*
+	 * Writes the bytes gathered so far as a block of their own, then flushes
+	 * the underlying stream, so a reader on the other end of a socket can
+	 * decode everything written up to here.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (!finished) {
+			writeBlock();
+		}
+		out.flush();
+	}
+
+	/*
+	 * Writes the last block and the end of the stream without closing the
+	 * underlying stream.
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		writeBlock();
+		out.write(new byte[4]);
+		finished = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	/*
+	 * The most code bytes a block of `blockSize` bytes can take.
+	 */
+	static int maxCodeBytes(int blockSize) {
+		return (int) ((blockSize * (long) MAX_LENGTH + 7) / 8) + 8;
+	}
+
+	private void writeBlock() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		Arrays.fill(counts, 0);
+		ByteHistogram.accumulate(counts, block, 0, count);
+		int[] lengths = LengthLimitedCodes.lengths(counts, MAX_LENGTH);
+		String header = CanonicalCodes.encodeHeader(lengths);
+		long bits = ParallelEncoder.encodeBlock(CodeTable.canonical(lengths), block, 0, count, encoded);
+		int codeBytes = (int) ((bits + 7) >>> 3);
+
+		ByteBuffer fields = ByteBuffer.wrap(head);
+		fields.position(8);
+		putHeader(fields, header);
+		fields.putInt(count);
+		crc.reset();
+		crc.update(head, 8, fields.position() - 8);
+		crc.update(encoded, 0, codeBytes);
+		fields.putInt(0, fields.position() - 8 + codeBytes);
+		fields.putInt(4, (int) crc.getValue());
+		out.write(head, 0, fields.position());
+		out.write(encoded, 0, codeBytes);
+		count = 0;
+	}
+
+	/*
+	 * Puts the header bit count and the '0'/'1' header packed and byte
+	 * padded.
+	 */
+	static void putHeader(ByteBuffer dst, String header) {
+		dst.putShort((short) header.length());
+		for (int at = 0; at < header.length(); at += 8) {
+			int b = 0;
+			for (int i = at; i < at + 8; i++) {
+				b = (b << 1) | (i < header.length() && header.charAt(i) == '1' ? 1 : 0);
+			}
+			dst.put((byte) b);
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (finished) {
+			throw new IOException("Write after finish");
+		}
+	}
+}
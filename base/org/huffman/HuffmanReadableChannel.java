@@ -0,0 +1,180 @@
+package org.huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32C;
+
+/*
+ * The channel counterpart of HuffmanInputStream, reading the layout of
+ * HuffmanOutputStream and HuffmanWritableChannel.
+ *
+ * Frames are read into, and decoded into, direct buffers from a
+ * DirectBufferPool, given back on close. transferTo() writes every decoded
+ * block to the target straight from native memory. As with the stream,
+ * nothing past the end-of-stream frame is read.
+ *
+ * The underlying channel must be in blocking mode.
+ */
+public final class HuffmanReadableChannel implements ReadableByteChannel {
+
+	private final ReadableByteChannel in;
+
+	private final DirectBufferPool pool;
+
+	private final ByteBuffer frame;
+
+	private final ByteBuffer decoded;
+
+	private final int blockSize;
+
+	private final CRC32C crc = new CRC32C();
+
+	private boolean ended;
+
+	private boolean closed;
+
+	public HuffmanReadableChannel(ReadableByteChannel in) throws IOException {
+		this(in, DirectBufferPool.SHARED);
+	}
+
+	/*
+	 * Reads the stream header from `in`.
+	 */
+	public HuffmanReadableChannel(ReadableByteChannel in, DirectBufferPool pool) throws IOException {
+		if (in instanceof SelectableChannel && !((SelectableChannel) in).isBlocking()) {
+			throw new IllegalBlockingModeException();
+		}
+		this.in = in;
+		this.pool = pool;
+		ByteBuffer header = ByteBuffer.allocate(HuffmanOutputStream.MAGIC.length + 1 + 4);
+		readFully(header);
+		header.flip();
+		for (byte b : HuffmanOutputStream.MAGIC) {
+			if (header.get() != b) {
+				throw new IOException("Not a Huffman stream");
+			}
+		}
+		int version = header.get() & 0xFF;
+		if (version != HuffmanOutputStream.VERSION) {
+			throw new IOException("Unsupported stream version " + version);
+		}
+		this.blockSize = header.getInt();
+		if (blockSize < 1 || blockSize > Container.MAX_BLOCK_SIZE) {
+			throw new IOException("Corrupt stream header");
+		}
+		this.frame = pool.acquire(8 + 2 + HuffmanOutputStream.MAX_HEADER_BYTES + 4
+				+ HuffmanOutputStream.maxCodeBytes(blockSize));
+		this.decoded = pool.acquire(blockSize);
+		decoded.flip();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		checkOpen();
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+		if (!decoded.hasRemaining() && !nextBlock()) {
+			return -1;
+		}
+		int n = Math.min(dst.remaining(), decoded.remaining());
+		int limit = decoded.limit();
+		decoded.limit(decoded.position() + n);
+		dst.put(decoded);
+		decoded.limit(limit);
+		return n;
+	}
+
+	/*
+	 * Decompresses the rest of the stream into `target`, block by block from
+	 * the direct decode buffer. Returns the number of bytes written.
+	 */
+	public long transferTo(WritableByteChannel target) throws IOException {
+		checkOpen();
+		long transferred = 0;
+		while (decoded.hasRemaining() || nextBlock()) {
+			transferred += decoded.remaining();
+			while (decoded.hasRemaining()) {
+				target.write(decoded);
+			}
+		}
+		return transferred;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		pool.release(frame);
+		pool.release(decoded);
+		in.close();
+	}
+
+	/*
+	 * Reads, verifies and decodes the next frame. Returns false at the end
+	 * of the stream.
+	 */
+	private boolean nextBlock() throws IOException {
+		while (!ended) {
+			frame.clear().limit(4);
+			readFully(frame);
+			int length = frame.getInt(0);
+			if (length == 0) {
+				ended = true;
+				break;
+			}
+			if (length < 2 + 4 || length > frame.capacity() - 4) {
+				throw new IOException("Corrupt frame length " + length);
+			}
+			frame.clear().limit(4 + length);
+			readFully(frame);
+			frame.flip().position(4);
+			crc.reset();
+			crc.update(frame);
+			if ((int) crc.getValue() != frame.getInt(0)) {
+				throw new IOException("Frame fails its CRC32C check");
+			}
+			frame.position(4);
+			decoded.clear().limit(blockSize);
+			try {
+				HuffmanInputStream.readCodec(frame).decode(frame, decoded);
+			} catch (BufferOverflowException | BufferUnderflowException e) {
+				throw new IOException("Corrupt frame", e);
+			}
+			decoded.flip();
+			if (decoded.hasRemaining()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void readFully(ByteBuffer dst) throws IOException {
+		while (dst.hasRemaining()) {
+			if (in.read(dst) < 0) {
+				throw new EOFException("Huffman stream ends early");
+			}
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package org.huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/*
+ * The channel counterpart of HuffmanOutputStream, writing the same stream
+ * layout, so either reader decodes it.
+ *
+ * The block and the frame it encodes into are direct buffers from a
+ * DirectBufferPool, given back on close. Frames go to the underlying channel
+ * straight from native memory, and transferFrom() encodes a FileChannel
+ * through a read-only mapping, so file data reaches the output without
+ * passing through the heap at all.
+ *
+ * The underlying channel must be in blocking mode.
+ */
+public final class HuffmanWritableChannel implements WritableByteChannel {
+
+	private static final int MAP_SIZE = 1 << 28;
+
+	private final WritableByteChannel out;
+
+	private final DirectBufferPool pool;
+
+	private final int blockSize;
+
+	private final ByteBuffer block;
+
+	private final ByteBuffer frame;
+
+	private final long[] counts = new long[ByteHistogram.ALPHABET];
+
+	private final CRC32C crc = new CRC32C();
+
+	private boolean finished;
+
+	private boolean closed;
+
+	public HuffmanWritableChannel(WritableByteChannel out) throws IOException {
+		this(out, HuffmanOutputStream.DEFAULT_BLOCK_SIZE, DirectBufferPool.SHARED);
+	}
+
+	public HuffmanWritableChannel(WritableByteChannel out, int blockSize, DirectBufferPool pool) throws IOException {
+		if (blockSize < 1 || blockSize > Container.MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Blocks hold 1 to " + Container.MAX_BLOCK_SIZE + " bytes");
+		}
+		if (out instanceof SelectableChannel && !((SelectableChannel) out).isBlocking()) {
+			throw new IllegalBlockingModeException();
+		}
+		this.out = out;
+		this.pool = pool;
+		this.blockSize = blockSize;
+		this.block = pool.acquire(blockSize);
+		ByteBuffer frame = null;
+		try {
+			frame = pool.acquire(8 + 2 + HuffmanOutputStream.MAX_HEADER_BYTES + 4
+					+ HuffmanOutputStream.maxCodeBytes(blockSize));
+			frame.put(HuffmanOutputStream.MAGIC).put((byte) HuffmanOutputStream.VERSION).putInt(blockSize).flip();
+			writeFully(frame);
+		} catch (IOException | RuntimeException e) {
+			// nobody gets a channel to close, so give back what was acquired here
+			pool.release(block);
+			if (frame != null) {
+				pool.release(frame);
+			}
+			throw e;
+		}
+		this.frame = frame;
+	}
+
+	/*
+	 * Takes every remaining byte of `src`; a full block is encoded and
+	 * written before this returns.
+	 */
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		checkOpen();
+		int written = src.remaining();
+		while (src.hasRemaining()) {
+			int n = Math.min(src.remaining(), block.remaining());
+			int limit = src.limit();
+			src.limit(src.position() + n);
+			block.put(src);
+			src.limit(limit);
+			if (!block.hasRemaining()) {
+				writeBlock();
+			}
+		}
+		return written;
+	}
+
+	/*
+	 * Compresses `src` to its end, reading straight into the direct block
+	 * buffer. Returns the number of bytes read.
+	 */
+	public long transferFrom(ReadableByteChannel src) throws IOException {
+		checkOpen();
+		long transferred = 0;
+		for (int n; (n = src.read(block)) >= 0; ) {
+			transferred += n;
+			if (!block.hasRemaining()) {
+				writeBlock();
+			}
+		}
+		return transferred;
+	}
+
+	/*
+	 * Compresses `count` bytes of `src` from `position`, or fewer if the file
+	 * ends first, without moving the position of `src`. The block in progress
+	 * is topped up first; whole blocks after it are encoded from a mapping of
+	 * the file. Returns the number of bytes transferred.
+	 */
+	public long transferFrom(FileChannel src, long position, long count) throws IOException {
+		checkOpen();
+		long end = position + Math.min(count, Math.max(0, src.size() - position));
+		long at = position;
+		while (block.position() > 0 && at < end) {
+			at = readAt(src, at, end);
+			if (!block.hasRemaining()) {
+				writeBlock();
+			}
+		}
+		long window = Math.max(blockSize, MAP_SIZE / blockSize * (long) blockSize);
+		while (end - at >= blockSize) {
+			long length = Math.min(window, (end - at) / blockSize * blockSize);
+			MappedByteBuffer mapping = src.map(FileChannel.MapMode.READ_ONLY, at, length);
+			for (int from = 0; from < length; from += blockSize) {
+				mapping.limit(from + blockSize).position(from);
+				writeFrame(mapping);
+			}
+			at += length;
+		}
+		while (at < end) {
+			at = readAt(src, at, end);
+		}
+		return at - position;
+	}
+
+	/*
+	 * Reads from `at` into the block, no further than `end`. Returns the
+	 * new file position.
+	 */
+	private long readAt(FileChannel src, long at, long end) throws IOException {
+		block.limit(block.position() + (int) Math.min(block.remaining(), end - at));
+		int n = src.read(block, at);
+		block.limit(blockSize);
+		if (n < 0) {
+			throw new EOFException("File shrank to " + at + " bytes");
+		}
+		return at + n;
+	}
+
+	/*
+	 * Writes the bytes gathered so far as a block of their own, so a reader
+	 * on the other end can decode everything written up to here.
+	 */
+	public void flush() throws IOException {
+		checkOpen();
+		writeBlock();
+	}
+
+	/*
+	 * Writes the last block and the end of the stream without closing the
+	 * underlying channel.
+	 */
+	public void finish() throws IOException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+		if (finished) {
+			return;
+		}
+		writeBlock();
+		frame.clear();
+		frame.putInt(0).flip();
+		writeFully(frame);
+		finished = true;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			finish();
+		} finally {
+			closed = true;
+			pool.release(block);
+			pool.release(frame);
+			out.close();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		if (block.position() == 0) {
+			return;
+		}
+		block.flip();
+		writeFrame(block);
+		block.clear().limit(blockSize);
+	}
+
+	/*
+	 * Encodes the remaining bytes of `src` as one frame.
+	 */
+	private void writeFrame(ByteBuffer src) throws IOException {
+		Arrays.fill(counts, 0);
+		ByteHistogram.accumulate(counts, src);
+		int[] lengths = LengthLimitedCodes.lengths(counts, HuffmanOutputStream.MAX_LENGTH);
+		frame.clear();
+		frame.position(8);
+		HuffmanOutputStream.putHeader(frame, CanonicalCodes.encodeHeader(lengths));
+		HuffmanCodec.encode(CodeTable.canonical(lengths), src, frame);
+		frame.flip();
+		frame.position(8);
+		crc.reset();
+		crc.update(frame);
+		frame.putInt(0, frame.limit() - 8);
+		frame.putInt(4, (int) crc.getValue());
+		frame.rewind();
+		writeFully(frame);
+	}
+
+	private void writeFully(ByteBuffer src) throws IOException {
+		while (src.hasRemaining()) {
+			out.write(src);
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+		if (finished) {
+			throw new IOException("Write after finish");
+		}
+	}
+}
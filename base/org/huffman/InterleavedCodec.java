@@ -0,0 +1,111 @@
+package org.huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Splits a block into STREAMS sub-streams, symbol i going to stream
+ * i % STREAMS, so that a decoder can follow all of them in lockstep. Each
+ * stream is its own chain of code lengths, so the CPU can work on the next
+ * code of one stream while the previous code of another is still resolving.
+ *
+ * Payload layout: the byte length of every stream but the last as an int,
+ * then the streams one after another, each padded to a byte.
+ */
+public final class InterleavedCodec {
+
+	public static final int STREAMS = 4;
+
+	/*
+	 * Bits a payload can need beyond its codes: the length fields and the
+	 * padding of every stream.
+	 */
+	public static final int OVERHEAD_BITS = 8 * (4 * (STREAMS - 1) + STREAMS);
+
+	private InterleavedCodec() {
+		// intentionally left blank
+	}
+
+	/*
+	 * The most bytes a payload of `symbols` symbols can take with `table`.
+	 */
+	public static int maxPayload(CodeTable table, int symbols) {
+		return (int) ((symbols * (long) table.maxLength() + OVERHEAD_BITS + 7) / 8) + 8;
+	}
+
+	/*
+	 * Packs `src[from, to)` into `dst` as interleaved streams. Returns the
+	 * payload size in bytes.
+	 */
+	public static int encodeBlock(CodeTable table, byte[] src, int from, int to, byte[] dst) throws IOException {
+		final long[] codes = table.codes();
+		final int[] lengths = table.lengths();
+		int count = to - from;
+		byte[][] streams = new byte[STREAMS][];
+		long[] bits = new long[STREAMS];
+		for (int s = 0; s < STREAMS; s++) {
+			streams[s] = new byte[maxPayload(table, count / STREAMS + 1)];
+			BitWriter out = new BitWriter(streams[s]);
+			for (int i = from + s; i < to; i += STREAMS) {
+				int symbol = src[i] & 0xFF;
+				out.writeBits(codes[symbol], lengths[symbol]);
+			}
+			bits[s] = out.tally();
+			out.close();
+		}
+		ByteBuffer payload = ByteBuffer.wrap(dst);
+		for (int s = 0; s < STREAMS - 1; s++) {
+			payload.putInt((int) ((bits[s] + 7) >>> 3));
+		}
+		for (int s = 0; s < STREAMS; s++) {
+			payload.put(streams[s], 0, (int) ((bits[s] + 7) >>> 3));
+		}
+		return payload.position();
+	}
+
+	/*
+	 * Decodes `symbols` symbols from the payload `src[0, length)` into `dst`,
+	 * one code from every stream per round. Returns whether every stream
+	 * ended in its own last byte, as a well-formed payload does.
+	 */
+	public static boolean decodeBlock(DecodeTable table, byte[] src, int length, byte[] dst, int symbols)
+			throws IOException {
+		int start = 4 * (STREAMS - 1);
+		if (length < start) {
+			throw new IOException("Interleaved payload of " + length + " bytes has no stream table");
+		}
+		ByteBuffer header = ByteBuffer.wrap(src, 0, length);
+		BitReader[] in = new BitReader[STREAMS];
+		int[] sizes = new int[STREAMS];
+		for (int s = 0; s < STREAMS; s++) {
+			int size = s < STREAMS - 1 ? header.getInt() : length - start;
+			if (size < 0 || size > length - start) {
+				throw new IOException("Interleaved stream " + s + " overruns its block");
+			}
+			in[s] = new BitReader(src, start, size);
+			sizes[s] = size;
+			start += size;
+		}
+		BitReader in0 = in[0];
+		BitReader in1 = in[1];
+		BitReader in2 = in[2];
+		BitReader in3 = in[3];
+		int i = 0;
+		for (; i + STREAMS <= symbols; i += STREAMS) {
+			dst[i] = (byte) table.decodeSymbol(in0);
+			dst[i + 1] = (byte) table.decodeSymbol(in1);
+			dst[i + 2] = (byte) table.decodeSymbol(in2);
+			dst[i + 3] = (byte) table.decodeSymbol(in3);
+		}
+		for (; i < symbols; i++) {
+			dst[i] = (byte) table.decodeSymbol(in[i % STREAMS]);
+		}
+		for (int s = 0; s < STREAMS; s++) {
+			long end = 8L * sizes[s];
+			if (in[s].position() > end || in[s].position() <= end - 8) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,107 @@
+package org.huffman;
+
+import java.util.Arrays;
+
+/*
+ * Optimal code lengths under a maximum length, by package-merge.
+ *
+ * Every symbol is a coin of its count. Starting from the coins sorted by
+ * weight, each of the maxLength - 1 rounds pairs up the previous list into
+ * packages and merges them back with the coins. The cheapest 2n - 2 items of
+ * the final list hold every symbol once per bit of its code.
+ */
+public final class LengthLimitedCodes {
+
+	private LengthLimitedCodes() {
+		// intentionally left blank
+	}
+
+	/*
+	 * The lengths of an optimal prefix code for `counts` whose codes are at
+	 * most `maxLength` bits. Symbols with a zero count get no code.
+	 */
+	public static int[] lengths(long[] counts, int maxLength) {
+		if (maxLength < 1 || maxLength > CanonicalCodes.MAX_LENGTH) {
+			throw new IllegalArgumentException("Maximum code length " + maxLength + " is out of range");
+		}
+		int[] lengths = new int[counts.length];
+		Integer[] order = new Integer[ByteHistogram.distinct(counts)];
+		for (int symbol = 0, n = 0; symbol < counts.length; symbol++) {
+			if (counts[symbol] > 0) {
+				order[n++] = symbol;
+			}
+		}
+		int n = order.length;
+		if (n == 0) {
+			return lengths;
+		}
+		if (n == 1) {
+			lengths[order[0]] = 1;
+			return lengths;
+		}
+		if (maxLength < 63 && (1L << maxLength) < n) {
+			throw new IllegalArgumentException(n + " symbols do not fit in codes of " + maxLength + " bits");
+		}
+		Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? Long.compare(counts[a], counts[b]) : Integer.compare(a, b));
+		Item[] coins = new Item[n];
+		for (int i = 0; i < n; i++) {
+			coins[i] = new Item(counts[order[i]], order[i], null, null);
+		}
+		Item[] list = coins;
+		for (int level = 1; level < maxLength; level++) {
+			Item[] packages = new Item[list.length / 2];
+			for (int i = 0; i < packages.length; i++) {
+				packages[i] = new Item(list[2 * i].weight + list[2 * i + 1].weight, -1, list[2 * i], list[2 * i + 1]);
+			}
+			list = merge(coins, packages);
+		}
+		for (int i = 0; i < 2 * n - 2; i++) {
+			count(list[i], lengths);
+		}
+		return lengths;
+	}
+
+	/*
+	 * Merges two weight-sorted lists, taking coins first on equal weights.
+	 */
+	private static Item[] merge(Item[] coins, Item[] packages) {
+		Item[] merged = new Item[coins.length + packages.length];
+		int c = 0;
+		int p = 0;
+		for (int i = 0; i < merged.length; i++) {
+			if (p == packages.length || (c < coins.length && coins[c].weight <= packages[p].weight)) {
+				merged[i] = coins[c++];
+			} else {
+				merged[i] = packages[p++];
+			}
+		}
+		return merged;
+	}
+
+	private static void count(Item item, int[] lengths) {
+		if (item.symbol >= 0) {
+			lengths[item.symbol]++;
+		} else {
+			count(item.left, lengths);
+			count(item.right, lengths);
+		}
+	}
+
+	private static final class Item {
+
+		final long weight;
+
+		final int symbol;
+
+		final Item left;
+
+		final Item right;
+
+		Item(long weight, int symbol, Item left, Item right) {
+			this.weight = weight;
+			this.symbol = symbol;
+			this.left = left;
+			this.right = right;
+		}
+	}
+}
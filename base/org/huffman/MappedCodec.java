@@ -0,0 +1,147 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Encodes and decodes through memory-mapped segments of at most
+ * SEGMENT_SIZE bytes, so neither side is bounded by the 2 GB reach of a
+ * single mapping or by the heap. Bit positions and lengths are 64-bit
+ * throughout.
+ *
+ * The layout is HuffmanCodes' with the 32-bit text length written as -1; the
+ * caller carries the real lengths in its header instead.
+ */
+public final class MappedCodec {
+
+	public static final long SEGMENT_SIZE = 1L << 30;
+
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private final CodeTable table;
+
+	public MappedCodec(CodeTable table) {
+		this.table = table;
+	}
+
+	/*
+	 * Encodes `input`, mapped a segment at a time, into `output` behind the
+	 * given '0'/'1' header.
+	 */
+	public void encode(File input, File output, String header) throws IOException {
+		final long[] codes = table.codes();
+		final int[] lengths = table.lengths();
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+				BitWriter out = new BitWriter(FileChannel.open(output.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+			out.writeInt(header.length());
+			out.writeInt(-1);
+			for (int i = 0; i < header.length(); i++) {
+				out.writeBit(header.charAt(i) == '1' ? 1 : 0);
+			}
+			long size = in.size();
+			for (long position = 0; position < size; position += SEGMENT_SIZE) {
+				MappedByteBuffer segment = in.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(SEGMENT_SIZE, size - position));
+				while (segment.hasRemaining()) {
+					int symbol = segment.get() & 0xFF;
+					out.writeBits(codes[symbol], lengths[symbol]);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Decodes the `symbols` bytes whose `textBits` bits of codes start
+	 * `textStart` bits into `input` and run to its last byte. Both lengths
+	 * are checked against the file before the output is sized, and the
+	 * codes must end exactly at `textBits`. The output is filled through
+	 * mapped segments. Returns the counts of the decoded bytes.
+	 */
+	public static long[] decode(File input, long textStart, long textBits, long symbols, DecodeTable table,
+			File output) throws IOException {
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			long end = textStart + textBits;
+			if (textBits < 0 || symbols < 0 || symbols > textBits || end < 0 || (end + 7) >>> 3 != in.size()) {
+				throw new IOException("Mapped text of " + textBits + " bits and " + symbols + " symbols does not fit a "
+						+ in.size() + " byte file");
+			}
+			try (FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				BitReader reader = new BitReader(new SegmentChannel(in, textStart >>> 3));
+				reader.skipBits(textStart & 7);
+				long bitLimit = (textStart & 7) + textBits;
+				byte[] chunk = new byte[CHUNK_SIZE];
+				long[] counts = new long[ByteHistogram.ALPHABET];
+				for (long position = 0; position < symbols; position += SEGMENT_SIZE) {
+					int length = (int) Math.min(SEGMENT_SIZE, symbols - position);
+					MappedByteBuffer segment = out.map(FileChannel.MapMode.READ_WRITE, position, length);
+					while (segment.hasRemaining()) {
+						int wanted = Math.min(chunk.length, segment.remaining());
+						if (table.decode(reader, bitLimit, chunk, 0, wanted) != wanted) {
+							throw new IOException("Encoded text ends before symbol " + (position + segment.position()));
+						}
+						ByteHistogram.accumulate(counts, chunk, 0, wanted);
+						segment.put(chunk, 0, wanted);
+					}
+					segment.force();
+				}
+				if (reader.position() != bitLimit) {
+					throw new IOException("Encoded text does not end after " + symbols + " symbols");
+				}
+				return counts;
+			}
+		}
+	}
+
+	/*
+	 * Reads a file from `position` on by copying out of one mapped segment
+	 * at a time.
+	 */
+	private static final class SegmentChannel implements ReadableByteChannel {
+
+		private final FileChannel file;
+
+		private long position;
+
+		private MappedByteBuffer segment;
+
+		SegmentChannel(FileChannel file, long position) {
+			this.file = file;
+			this.position = position;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (segment == null || !segment.hasRemaining()) {
+				long size = file.size();
+				if (position >= size) {
+					return -1;
+				}
+				segment = file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+				position += segment.capacity();
+			}
+			int count = Math.min(dst.remaining(), segment.remaining());
+			ByteBuffer slice = segment.duplicate();
+			slice.limit(slice.position() + count);
+			dst.put(slice);
+			segment.position(segment.position() + count);
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return file.isOpen();
+		}
+
+		@Override
+		public void close() {
+			segment = null;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Encodes with one shared CodeTable on `threads` threads. Blocks go through
+ * an EncodePipeline, so reading, packing and writing overlap: every block is
+ * packed into its own bit buffer, and the buffers are stitched onto the
+ * output at their bit offsets, in order. The result is bit for bit what
+ * StreamingEncoder writes.
+ */
+public final class ParallelEncoder {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	private final CodeTable table;
+
+	private final int threads;
+
+	private final int blockSize;
+
+	private long[] blockOffsets = new long[0];
+
+	private int blockCount;
+
+	public ParallelEncoder(CodeTable table, int threads) {
+		this(table, threads, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ParallelEncoder(CodeTable table, int threads, int blockSize) {
+		if (threads < 1 || blockSize < 1) {
+			throw new IllegalArgumentException("Need at least one thread and one byte per block");
+		}
+		this.table = table;
+		this.threads = threads;
+		this.blockSize = blockSize;
+	}
+
+	/*
+	 * Encodes `input` into `output` behind the given '0'/'1' header, in the
+	 * same layout as StreamingEncoder.
+	 */
+	public void encode(File input, File output, String header, long textBits) throws IOException {
+		if (textBits > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Encoded text of " + textBits + " bits does not fit the 32-bit length field");
+		}
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+				BitWriter out = new BitWriter(FileChannel.open(output.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+			out.writeInt(header.length());
+			out.writeInt((int) textBits);
+			for (int i = 0; i < header.length(); i++) {
+				out.writeBit(header.charAt(i) == '1' ? 1 : 0);
+			}
+			encodeText(in, out);
+		}
+	}
+
+	/*
+	 * Encodes everything left in `in` onto `out`, recording where each block
+	 * starts relative to the first bit written here.
+	 */
+	public void encodeText(FileChannel in, BitWriter out) throws IOException {
+		long textStart = out.tally();
+		blockCount = 0;
+		int maxPayload = (int) ((blockSize * (long) table.maxLength() + 7) / 8) + 8;
+		EncodePipeline pipeline = new EncodePipeline(threads, blockSize, maxPayload,
+				(src, length, dst) -> encodeBlock(table, src, 0, length, dst));
+		pipeline.run(in, (encoded, symbols, bits) -> {
+			recordOffset(out.tally() - textStart);
+			out.writePacked(encoded, bits);
+		});
+	}
+
+	/*
+	 * Bit offset of every block from the start of the encoded text, in
+	 * block order.
+	 */
+	public long[] blockOffsets() {
+		return Arrays.copyOf(blockOffsets, blockCount);
+	}
+
+	public int blockSize() {
+		return blockSize;
+	}
+
+	private void recordOffset(long offset) {
+		if (blockCount == blockOffsets.length) {
+			blockOffsets = Arrays.copyOf(blockOffsets, Math.max(16, blockCount * 2));
+		}
+		blockOffsets[blockCount++] = offset;
+	}
+
+	/*
+	 * Packs `src[from, to)` into `dst`, returning the number of bits.
+	 */
+	public static long encodeBlock(CodeTable table, byte[] src, int from, int to, byte[] dst) {
+		final long[] codes = table.codes();
+		final int[] lengths = table.lengths();
+		try {
+			BitWriter writer = new BitWriter(dst);
+			for (int i = from; i < to; i++) {
+				int symbol = src[i] & 0xFF;
+				writer.writeBits(codes[symbol], lengths[symbol]);
+			}
+			long bits = writer.tally();
+			writer.close();
+			return bits;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Byte counts estimated from every `stride`-th block of a file, so a code
+ * can be built without reading the whole input before encoding it. Blocks
+ * are picked at a fixed stride from the middle of the first stride rather
+ * than at random, which spreads them evenly over the file and makes the
+ * estimate repeatable.
+ *
+ * Bytes the sample never saw get an escape count of 1, so they still have a
+ * code, however long, if the rest of the file turns out to contain them.
+ * The escapes take one slot of an otherwise complete code, which costs about
+ * a bit on every occurrence of the rarest sampled byte.
+ */
+public final class SampledHistogram {
+
+	private final long[] counts;
+
+	private final long sampledBytes;
+
+	private final long inputBytes;
+
+	private final int escapes;
+
+	private SampledHistogram(long[] counts, long sampledBytes, long inputBytes, int escapes) {
+		this.counts = counts;
+		this.sampledBytes = sampledBytes;
+		this.inputBytes = inputBytes;
+		this.escapes = escapes;
+	}
+
+	/*
+	 * Counts every `stride`-th block of `blockSize` bytes of `input`, at
+	 * least one block of a non-empty file. A stride of 1 counts the whole
+	 * file, exactly and without escapes.
+	 */
+	public static SampledHistogram sample(File input, int stride, int blockSize) throws IOException {
+		if (stride < 1 || blockSize < 1) {
+			throw new IllegalArgumentException("Stride and block size must be positive");
+		}
+		long[] counts = new long[ByteHistogram.ALPHABET];
+		long sampled = 0;
+		long size;
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			size = in.size();
+			long blocks = (size + blockSize - 1) / blockSize;
+			ByteBuffer block = ByteBuffer.allocate(blockSize);
+			for (long index = Math.min(stride / 2, blocks - 1); index >= 0 && index < blocks; index += stride) {
+				long position = index * blockSize;
+				block.clear();
+				while (block.hasRemaining() && in.read(block, position + block.position()) >= 0) {
+					// positional reads leave the channel position alone
+				}
+				ByteHistogram.accumulate(counts, block.array(), 0, block.position());
+				sampled += block.position();
+			}
+		}
+		int escapes = 0;
+		if (sampled < size) {
+			for (int symbol = 0; symbol < counts.length; symbol++) {
+				if (counts[symbol] == 0) {
+					counts[symbol] = 1;
+					escapes++;
+				}
+			}
+		}
+		return new SampledHistogram(counts, sampled, size, escapes);
+	}
+
+	/*
+	 * The sampled counts, escapes included.
+	 */
+	public long[] counts() {
+		return counts.clone();
+	}
+
+	public long sampledBytes() {
+		return sampledBytes;
+	}
+
+	public long inputBytes() {
+		return inputBytes;
+	}
+
+	/*
+	 * How many bytes were not seen in the sample and got an escape count.
+	 */
+	public int escapes() {
+		return escapes;
+	}
+}
@@ -0,0 +1,58 @@
+package org.huffman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Two-pass file encoder. The first pass counts bytes with ByteHistogram, the
+ * second re-reads the file and packs each byte's code straight into a
+ * BitWriter, so memory stays at two fixed buffers whatever the size of the
+ * input.
+ *
+ * The output keeps the layout of HuffmanCodes: header length and text length
+ * as 32-bit bit counts, the header bits, then the text bits, most significant
+ * bit first and zero padded to a whole byte.
+ */
+public final class StreamingEncoder {
+
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	private final CodeTable table;
+
+	public StreamingEncoder(CodeTable table) {
+		this.table = table;
+	}
+
+	/*
+	 * Encodes `input` into `output` behind the given '0'/'1' header.
+	 * `textBits` must be the table's `encodedBits` for this input.
+	 */
+	public void encode(File input, File output, String header, long textBits) throws IOException {
+		if (textBits > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Encoded text of " + textBits + " bits does not fit the 32-bit length field");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+				BitWriter out = new BitWriter(FileChannel.open(output.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), BUFFER_SIZE)) {
+			out.writeInt(header.length());
+			out.writeInt((int) textBits);
+			for (int i = 0; i < header.length(); i++) {
+				out.writeBit(header.charAt(i) == '1' ? 1 : 0);
+			}
+			final long[] codes = table.codes();
+			final int[] lengths = table.lengths();
+			while (in.read(buffer) != -1) {
+				byte[] bytes = buffer.array();
+				for (int i = 0, n = buffer.position(); i < n; i++) {
+					int symbol = bytes[i] & 0xFF;
+					out.writeBits(codes[symbol], lengths[symbol]);
+				}
+				buffer.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package org.huffman.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks with the GC profiler always on, so allocation rates
+ * are reported next to throughput. Takes the usual JMH arguments, e.g. a
+ * benchmark name pattern or -p corpus=text.
+ */
+public class BenchmarkMain {
+
+	public static void main(String... args) throws RunnerException, CommandLineOptionException {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
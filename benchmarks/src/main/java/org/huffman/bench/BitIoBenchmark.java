@@ -0,0 +1,51 @@
+package org.huffman.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.huffman.BitReader;
+import org.huffman.BitWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The bit layer on its own: every code of the corpus written to and read
+ * back from memory with its real length, without any table lookups.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitIoBenchmark {
+
+	@Benchmark
+	public long bitWrite(CodecState state, Throughput throughput) throws IOException {
+		throughput.megabytes += state.megabytes;
+		final long[] codes = state.table.codes();
+		final int[] lengths = state.table.lengths();
+		BitWriter out = new BitWriter(state.scratch);
+		for (byte b : state.input) {
+			out.writeBits(codes[b & 0xFF], lengths[b & 0xFF]);
+		}
+		out.flush();
+		return out.tally();
+	}
+
+	@Benchmark
+	public long bitRead(CodecState state, Throughput throughput) throws IOException {
+		throughput.megabytes += state.megabytes;
+		final int[] lengths = state.table.lengths();
+		BitReader in = new BitReader(state.encoded, 0, state.encoded.length);
+		long sum = 0;
+		for (byte b : state.input) {
+			sum += in.readBits(lengths[b & 0xFF]);
+		}
+		return sum;
+	}
+}
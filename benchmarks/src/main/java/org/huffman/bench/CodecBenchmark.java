@@ -0,0 +1,97 @@
+package org.huffman.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.huffman.BitReader;
+import org.huffman.ByteHistogram;
+import org.huffman.CodeTable;
+import org.huffman.CodeTableCache;
+import org.huffman.ContextModel;
+import org.huffman.InterleavedCodec;
+import org.huffman.ParallelEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The stages of the codec, one benchmark each, over every corpus. Stages
+ * that work on the whole input add its size to Throughput; tree and table
+ * building depend on the alphabet rather than the input size, so they are
+ * reported in operations only.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Benchmark
+	public long[] histogram(CodecState state, Throughput throughput) {
+		throughput.megabytes += state.megabytes;
+		return ByteHistogram.count(state.input);
+	}
+
+	@Benchmark
+	public Object treeBuild(CodecState state) throws Throwable {
+		state.init.invoke(state.huffmanCodes, state.counts);
+		return state.huffmanCodes;
+	}
+
+	@Benchmark
+	public CodeTable codeTable(CodecState state) throws Throwable {
+		return (CodeTable) state.buildCodeTable.invoke(state.huffmanCodes);
+	}
+
+	@Benchmark
+	public CodeTableCache.Tables cachedCodeTable(CodecState state) {
+		return state.cache.get(state.counts);
+	}
+
+	@Benchmark
+	public long encode(CodecState state, Throughput throughput) {
+		throughput.megabytes += state.megabytes;
+		return ParallelEncoder.encodeBlock(state.table, state.input, 0, state.input.length, state.scratch);
+	}
+
+	@Benchmark
+	public int decode(CodecState state, Throughput throughput) throws IOException {
+		throughput.megabytes += state.megabytes;
+		BitReader in = new BitReader(state.encoded, 0, state.encoded.length);
+		return state.decodeTable.decode(in, state.encodedBits, state.decoded, 0, state.input.length);
+	}
+
+	@Benchmark
+	public int decodeMultiSymbol(CodecState state, Throughput throughput) throws IOException {
+		throughput.megabytes += state.megabytes;
+		BitReader in = new BitReader(state.encoded, 0, state.encoded.length);
+		return state.multiSymbolTable.decode(in, state.encodedBits, state.decoded, 0, state.input.length);
+	}
+
+	@Benchmark
+	public byte[] decodeInterleaved(CodecState state, Throughput throughput) throws IOException {
+		throughput.megabytes += state.megabytes;
+		InterleavedCodec.decodeBlock(state.decodeTable, state.interleaved, state.interleavedBytes, state.decoded,
+				state.input.length);
+		return state.decoded;
+	}
+
+	@Benchmark
+	public long encodeContext(CodecState state, Throughput throughput) {
+		throughput.megabytes += state.megabytes;
+		return state.contextModel.encodeBlock(state.input, 0, state.input.length, state.contextEncoded);
+	}
+
+	@Benchmark
+	public byte[] decodeContext(CodecState state, Throughput throughput) throws IOException {
+		throughput.megabytes += state.megabytes;
+		BitReader in = new BitReader(state.contextEncoded, 0, state.contextEncoded.length);
+		ContextModel.decodeBlock(state.contextTables, in, state.decoded, state.input.length);
+		return state.decoded;
+	}
+}
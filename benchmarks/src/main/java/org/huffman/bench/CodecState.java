@@ -0,0 +1,113 @@
+package org.huffman.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.huffman.ByteHistogram;
+import org.huffman.CanonicalCodes;
+import org.huffman.CodeTable;
+import org.huffman.CodeTableCache;
+import org.huffman.ContextModel;
+import org.huffman.DecodeTable;
+import org.huffman.InterleavedCodec;
+import org.huffman.ParallelEncoder;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * One corpus with everything the codec derives from it, built once per
+ * trial. HuffmanCodes lives in the default package, which Java code in a
+ * named package cannot name, so its tree building is reached through method
+ * handles.
+ */
+@State(Scope.Benchmark)
+public class CodecState {
+
+	@Param({ "text", "random", "skewed", "runs" })
+	public String corpus;
+
+	@Param({ "65536", "4194304" })
+	public int size;
+
+	public byte[] input;
+
+	public long[] counts;
+
+	public CodeTable table;
+
+	public DecodeTable decodeTable;
+
+	public DecodeTable multiSymbolTable;
+
+	public byte[] encoded;
+
+	public long encodedBits;
+
+	public CodeTableCache cache;
+
+	public ContextModel contextModel;
+
+	public DecodeTable[] contextTables;
+
+	public byte[] contextEncoded;
+
+	public byte[] interleaved;
+
+	public int interleavedBytes;
+
+	public byte[] scratch;
+
+	public byte[] decoded;
+
+	public double megabytes;
+
+	public Object huffmanCodes;
+
+	public MethodHandle init;
+
+	public MethodHandle buildCodeTable;
+
+	@Setup
+	public void setUp() throws Throwable {
+		input = Corpora.generate(corpus, size);
+		megabytes = size / (1024.0 * 1024.0);
+		counts = ByteHistogram.count(input);
+
+		Class<?> codecClass = Class.forName("HuffmanCodes");
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		huffmanCodes = lookup.findConstructor(codecClass, MethodType.methodType(void.class, String.class)).invoke("");
+		init = lookup.findVirtual(codecClass, "init", MethodType.methodType(void.class, long[].class));
+		buildCodeTable = lookup.findVirtual(codecClass, "buildCodeTable", MethodType.methodType(CodeTable.class));
+		init.invoke(huffmanCodes, counts);
+		table = (CodeTable) buildCodeTable.invoke(huffmanCodes);
+		cache = new CodeTableCache(16);
+		cache.get(counts);
+
+		scratch = new byte[(int) ((size * (long) table.maxLength() + 7) / 8) + 8];
+		// tree codes are not canonical, so decoding works on the canonical
+		// code with the same lengths
+		CodeTable canonical = CodeTable.canonical(table.lengths());
+		encoded = new byte[scratch.length];
+		decoded = new byte[size];
+		encodedBits = ParallelEncoder.encodeBlock(canonical, input, 0, input.length, encoded);
+		decodeTable = DecodeTable.fromLengths(canonical.lengths());
+		multiSymbolTable = decodeTable.multiSymbol();
+		interleaved = new byte[InterleavedCodec.maxPayload(canonical, size)];
+		interleavedBytes = InterleavedCodec.encodeBlock(canonical, input, 0, input.length, interleaved);
+
+		// the whole input is one block, so its context starts at 0
+		long[] pairs = new long[ContextModel.CONTEXTS * ByteHistogram.ALPHABET];
+		int context = 0;
+		for (byte b : input) {
+			pairs[(context << 8) | (b & 0xFF)]++;
+			context = b & 0xFF;
+		}
+		contextModel = ContextModel.build(pairs, CanonicalCodes.MAX_LENGTH);
+		contextTables = contextModel.decodeTables();
+		contextEncoded = new byte[contextModel.maxPayload(size)];
+		contextModel.encodeBlock(input, 0, input.length, contextEncoded);
+	}
+}
@@ -0,0 +1,63 @@
+package org.huffman.bench;
+
+import java.util.Random;
+
+/*
+ * Generated inputs of different entropy, so results do not depend on
+ * files that happen to be lying around.
+ */
+public final class Corpora {
+
+	private static final String LETTERS = "etaoinshrdlcumwfgypbvkjxqz";
+
+	private Corpora() {
+		// intentionally left blank
+	}
+
+	/*
+	 * `size` bytes of the named kind: "text" is words of skewed letters,
+	 * "random" is uniform bytes, "skewed" is bytes with geometrically falling
+	 * frequencies and "runs" is long runs of a few values.
+	 */
+	public static byte[] generate(String kind, int size) {
+		Random random = new Random(42);
+		byte[] data = new byte[size];
+		switch (kind) {
+		case "text":
+			for (int i = 0; i < size; ) {
+				int word = 1 + random.nextInt(9);
+				for (int j = 0; j < word && i < size; j++) {
+					double r = random.nextDouble();
+					data[i++] = (byte) LETTERS.charAt((int) (r * r * LETTERS.length()));
+				}
+				if (i < size) {
+					data[i++] = (byte) (random.nextInt(12) == 0 ? '\n' : ' ');
+				}
+			}
+			break;
+		case "random":
+			random.nextBytes(data);
+			break;
+		case "skewed":
+			for (int i = 0; i < size; i++) {
+				int symbol = 0;
+				while (symbol < 255 && random.nextBoolean()) {
+					symbol++;
+				}
+				data[i] = (byte) symbol;
+			}
+			break;
+		case "runs":
+			for (int i = 0; i < size; ) {
+				byte value = (byte) random.nextInt(4);
+				for (int run = 64 + random.nextInt(4096); run > 0 && i < size; run--) {
+					data[i++] = value;
+				}
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown corpus " + kind);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,108 @@
+package org.huffman.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.huffman.ByteHistogram;
+import org.huffman.HuffmanCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Stress test of one HuffmanCodec shared by every benchmark thread, each
+ * with its own buffers. Run with -t 1, 2, 4 ... to see how it scales; the
+ * GC profiler of BenchmarkMain should report no allocation per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class SharedCodecBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Shared {
+
+		@Param({ "text", "skewed" })
+		public String corpus;
+
+		@Param({ "1024", "65536" })
+		public int size;
+
+		public byte[] input;
+
+		public HuffmanCodec codec;
+
+		public double megabytes;
+
+		@Setup
+		public void setUp() {
+			input = Corpora.generate(corpus, size);
+			codec = HuffmanCodec.fromCounts(ByteHistogram.count(input));
+			megabytes = size / (1024.0 * 1024.0);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Buffers {
+
+		@Param({ "heap", "direct" })
+		public String kind;
+
+		public ByteBuffer raw;
+
+		public ByteBuffer encoded;
+
+		public ByteBuffer decoded;
+
+		public ByteBuffer scratch;
+
+		@Setup
+		public void setUp(Shared shared) {
+			boolean direct = "direct".equals(kind);
+			raw = allocate(shared.size, direct);
+			raw.put(shared.input).flip();
+			encoded = allocate(shared.codec.maxEncodedLength(shared.size), direct);
+			decoded = allocate(shared.size, direct);
+			scratch = allocate(encoded.capacity(), direct);
+			shared.codec.encode(raw.duplicate(), encoded);
+			encoded.flip();
+		}
+
+		private static ByteBuffer allocate(int capacity, boolean direct) {
+			return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		}
+	}
+
+	@Benchmark
+	public int encode(Shared shared, Buffers buffers, Throughput throughput) {
+		throughput.megabytes += shared.megabytes;
+		ByteBuffer src = buffers.raw;
+		src.rewind();
+		ByteBuffer dst = buffers.scratch;
+		dst.clear();
+		return shared.codec.encode(src, dst);
+	}
+
+	@Benchmark
+	public int decode(Shared shared, Buffers buffers, Throughput throughput) throws IOException {
+		throughput.megabytes += shared.megabytes;
+		ByteBuffer src = buffers.encoded;
+		src.rewind();
+		ByteBuffer dst = buffers.decoded;
+		dst.clear();
+		return shared.codec.decode(src, dst);
+	}
+}
@@ -0,0 +1,23 @@
+package org.huffman.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Counts the megabytes of input each benchmark gets through, which JMH
+ * reports next to the score as a rate: MB/s when run in seconds.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+	public double megabytes;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		megabytes = 0;
+	}
+}
@@ -0,0 +1,395 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import org.huffman.Container;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Round trips through the command line, one test per file layout, and the
+ * damage each layout must refuse to decode.
+ */
+public class HuffmanCodesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// where the packed code header of a Container starts
+	private static final int CONTAINER_HEADER = 4 + 1 + 1 + 8 + 4 + 4;
+
+	@Test
+	public void blockedRoundTrip() throws IOException {
+		for (byte[] data : new byte[][] { text(3 << 20), new byte[0], { 'x' } }) {
+			File encoded = encode(data, "-b", "-t", "3");
+			assertArrayEquals(data, decode(encoded, "-t", "2"));
+		}
+	}
+
+	@Test
+	public void blockedRejectsTruncation() throws IOException {
+		File encoded = encode(text(3 << 20), "-b");
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.setLength(file.length() - 5);
+		}
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void blockedRejectsWrongBlockOffset() throws IOException {
+		File encoded = encode(text(3 << 20), "-b");
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.seek(file.length() - 8);
+			long index = file.readLong();
+			// the second block's offset, one bit late
+			file.seek(index + 8 + 12);
+			long offset = file.readLong();
+			file.seek(index + 8 + 12);
+			file.writeLong(offset + 1);
+		}
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void blockedRejectsOversizedIndex() throws IOException {
+		File encoded = encode(text(3 << 20), "-b");
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.seek(file.length() - 8);
+			file.seek(file.readLong());
+			file.writeInt(Integer.MAX_VALUE);
+		}
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void mappedRoundTrip() throws IOException {
+		for (byte[] data : new byte[][] { text(3 << 20), new byte[0], { 'x' } }) {
+			File encoded = encode(data, "-m");
+			assertArrayEquals(data, decode(encoded));
+		}
+	}
+
+	@Test
+	public void mappedRejectsTruncationAndTrailingBytes() throws IOException {
+		File encoded = encode(text(1 << 16), "-m");
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.setLength(file.length() - 1);
+		}
+		assertDecodeFails(encoded);
+		encoded = encode(text(1 << 16), "-m");
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.setLength(file.length() + 1);
+		}
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void mappedRejectsWrongLengths() throws IOException {
+		// the 64-bit text length and symbol count follow the two ints and the marker byte
+		for (long[] patch : new long[][] { { 9, 3 }, { 9, -3 }, { 17, 1 }, { 17, Long.MAX_VALUE / 2 } }) {
+			File encoded = encode(text(1 << 16), "-m");
+			try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+				file.seek(patch[0]);
+				long value = file.readLong();
+				file.seek(patch[0]);
+				file.writeLong(value + patch[1]);
+			}
+			assertDecodeFails(encoded);
+		}
+	}
+
+	@Test
+	public void containerRoundTrip() throws IOException {
+		for (String[] options : new String[][] { {}, { "-c" }, { "-t", "3" } }) {
+			for (byte[] data : new byte[][] { text(3 << 20), new byte[0], { 'x' } }) {
+				File encoded = encode(data, options);
+				assertArrayEquals(data, decode(encoded));
+			}
+		}
+	}
+
+	@Test
+	public void containerRejectsTruncation() throws IOException {
+		File encoded = encode(text(3 << 20));
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.setLength(file.length() - 5);
+		}
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void containerRejectsCrcMismatch() throws IOException {
+		// a bit of the code header, then a bit of the last block
+		for (boolean inHeader : new boolean[] { true, false }) {
+			File encoded = encode(text(3 << 20));
+			try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+				file.seek(inHeader ? CONTAINER_HEADER : file.length() - 1);
+				int b = file.read();
+				file.seek(file.getFilePointer() - 1);
+				file.write(b ^ 0x10);
+			}
+			assertDecodeFails(encoded);
+		}
+	}
+
+	@Test
+	public void containerRejectsOversizedHeader() throws IOException {
+		for (int headerBits : new int[] { Container.MAX_HEADER_BITS + 1, Integer.MAX_VALUE }) {
+			File encoded = encode(text(1 << 16));
+			try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+				file.seek(CONTAINER_HEADER - 4);
+				file.writeInt(headerBits);
+			}
+			assertDecodeFails(encoded);
+		}
+	}
+
+	@Test
+	public void containerRejectsMalformedHeader() throws IOException {
+		// a tree of nothing but inner nodes, and a canonical header cut short
+		File encoded = encode(text(1 << 16));
+		rewriteContainerHeader(encoded, 0, 0x00);
+		assertDecodeFails(encoded);
+		encoded = encode(text(1 << 16), "-c");
+		rewriteContainerHeader(encoded, 1, 0xFF);
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void interleavedRoundTrip() throws IOException {
+		for (String[] options : new String[][] { { "-i" }, { "-i", "-c", "-t", "3" } }) {
+			for (byte[] data : new byte[][] { text(3 << 20), new byte[0], { 'x' }, { 'x', 'y', 'x' } }) {
+				File encoded = encode(data, options);
+				assertArrayEquals(data, decode(encoded));
+			}
+		}
+	}
+
+	@Test
+	public void interleavedRejectsShortPayload() throws IOException {
+		File encoded = encode(text(64), "-i");
+		// one stream size, large enough to wrap an int offset
+		replaceFirstPayload(encoded, new byte[] { 0x7F, -1, -1, -1 });
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void interleavedRejectsWrongStreamSize() throws IOException {
+		File encoded = encode(text(1 << 16), "-i");
+		byte[] payload = firstPayload(encoded);
+		// the first stream one byte longer, the last one byte shorter
+		payload[3]++;
+		replaceFirstPayload(encoded, payload);
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void contextRoundTrip() throws IOException {
+		for (String[] options : new String[][] { { "-x" }, { "-x", "-l", "12", "-t", "3" } }) {
+			for (byte[] data : new byte[][] { text(3 << 20), new byte[0], { 'x' } }) {
+				File encoded = encode(data, options);
+				assertArrayEquals(data, decode(encoded));
+			}
+		}
+	}
+
+	@Test
+	public void contextRejectsMalformedHeader() throws IOException {
+		// 255 clusters, every context in a missing one
+		File encoded = encode(text(1 << 16), "-x");
+		rewriteContainerHeader(encoded, 0, 0xFF);
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void contextRejectsShortBlock() throws IOException {
+		File encoded = encode(text(1 << 16), "-x");
+		byte[] payload = firstPayload(encoded);
+		replaceFirstPayload(encoded, Arrays.copyOf(payload, payload.length - 1));
+		assertDecodeFails(encoded);
+	}
+
+	@Test
+	public void dictionaryRoundTrip() throws IOException {
+		File dictionary = trainDictionary();
+		String path = dictionary.getPath();
+		// records for small inputs, the container for large or interleaved ones
+		for (String[] options : new String[][] { { "-D", path }, { "-D", path, "-i" } }) {
+			for (byte[] data : new byte[][] { text(3 << 20), text(100), new byte[0], { 'x' } }) {
+				File encoded = encode(data, options);
+				assertArrayEquals(data, decode(encoded, "-D", path));
+			}
+		}
+	}
+
+	@Test
+	public void dictionaryFileRejectsDamage() throws IOException {
+		byte[] saved = Files.readAllBytes(trainDictionary().toPath());
+		for (int damage = 0; damage < 3; damage++) {
+			byte[] bytes = damage == 0 ? Arrays.copyOf(saved, saved.length - 1) : saved.clone();
+			if (damage == 1) {
+				// a code length
+				bytes[9] ^= 0x01;
+			} else if (damage == 2) {
+				bytes[bytes.length - 1] ^= 0x01;
+			}
+			File dictionary = folder.newFile();
+			Files.write(dictionary.toPath(), bytes);
+			try {
+				encode(text(100), "-D", dictionary.getPath());
+				fail("Damaged dictionary loaded");
+			} catch (IOException expected) {
+				// refused
+			}
+		}
+	}
+
+	@Test
+	public void recordRejectsDamage() throws IOException {
+		String path = trainDictionary().getPath();
+		for (int damage = 0; damage < 4; damage++) {
+			File encoded = encode(text(100), "-D", path);
+			try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+				if (damage == 0) {
+					file.setLength(file.length() - 1);
+				} else if (damage == 1) {
+					file.setLength(file.length() + 1);
+				} else {
+					// the size varint, then a byte of the codes
+					file.seek(damage == 2 ? 9 : 12);
+					int b = file.read();
+					file.seek(file.getFilePointer() - 1);
+					file.write(b ^ 0x01);
+				}
+			}
+			try {
+				decode(encoded, "-D", path);
+				fail("Damaged record decoded");
+			} catch (IOException expected) {
+				// refused
+			}
+		}
+	}
+
+	@Test
+	public void dictionaryContainerRejectsTruncation() throws IOException {
+		String path = trainDictionary().getPath();
+		File encoded = encode(text(3 << 20), "-D", path);
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.setLength(file.length() - 5);
+		}
+		assertDecodeFails(encoded);
+	}
+
+	/*
+	 * Skewed, repeatable text, so the code has lengths from short to long.
+	 */
+	static byte[] text(int length) {
+		Random random = new Random(length);
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) ('a' + Math.min(25, (int) Math.abs(random.nextGaussian() * 6)));
+		}
+		return data;
+	}
+
+	private File trainDictionary() throws IOException {
+		File samples = folder.newFolder();
+		for (int i = 1; i <= 3; i++) {
+			Files.write(new File(samples, "sample" + i).toPath(), text(1000 * i));
+		}
+		File dictionary = folder.newFile();
+		HuffmanCodes.main("--train", samples.getPath(), dictionary.getPath());
+		return dictionary;
+	}
+
+	private File encode(byte[] data, String... options) throws IOException {
+		File input = folder.newFile();
+		Files.write(input.toPath(), data);
+		File output = folder.newFile();
+		HuffmanCodes.main(args("-e", options, input, output));
+		return output;
+	}
+
+	private byte[] decode(File encoded, String... options) throws IOException {
+		File output = folder.newFile();
+		HuffmanCodes.main(args("-d", options, encoded, output));
+		return Files.readAllBytes(output.toPath());
+	}
+
+	private void assertDecodeFails(File encoded) {
+		try {
+			decode(encoded);
+			fail("Damaged file decoded");
+		} catch (IOException expected) {
+			// refused
+		}
+	}
+
+	/*
+	 * Fills the Container's code header from byte `keep` on with `fill`
+	 * and fixes up its CRC, so only the header decoder can object.
+	 */
+	private static void rewriteContainerHeader(File encoded, int keep, int fill) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.seek(CONTAINER_HEADER - 4);
+			byte[] fields = new byte[CONTAINER_HEADER + ((file.readInt() + 7) >>> 3)];
+			file.seek(0);
+			file.readFully(fields);
+			Arrays.fill(fields, CONTAINER_HEADER + keep, fields.length, (byte) fill);
+			CRC32C crc = new CRC32C();
+			crc.update(fields, 0, fields.length);
+			file.seek(0);
+			file.write(fields);
+			file.writeInt((int) crc.getValue());
+		}
+	}
+
+	private static long firstFrame(RandomAccessFile file) throws IOException {
+		file.seek(CONTAINER_HEADER - 4);
+		return CONTAINER_HEADER + ((file.readInt() + 7) >>> 3) + 4;
+	}
+
+	private static byte[] firstPayload(File encoded) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.seek(firstFrame(file) + 4);
+			byte[] payload = new byte[(file.readInt() + 7) >>> 3];
+			file.readInt();
+			file.readFully(payload);
+			return payload;
+		}
+	}
+
+	/*
+	 * Swaps the payload of a one-block Container for `payload`, with a
+	 * matching length and CRC.
+	 */
+	private static void replaceFirstPayload(File encoded, byte[] payload) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(encoded, "rw")) {
+			file.seek(firstFrame(file) + 4);
+			CRC32C crc = new CRC32C();
+			crc.update(payload, 0, payload.length);
+			file.writeInt(8 * payload.length);
+			file.writeInt((int) crc.getValue());
+			file.write(payload);
+			file.setLength(file.getFilePointer());
+		}
+	}
+
+	private static String[] args(String mode, String[] options, File input, File output) {
+		String[] args = new String[options.length + 3];
+		args[0] = mode;
+		System.arraycopy(options, 0, args, 1, options.length);
+		args[args.length - 2] = input.getPath();
+		args[args.length - 1] = output.getPath();
+		return args;
+	}
+}
@@ -0,0 +1,152 @@
+package org.huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Round trips through HuffmanWritableChannel and HuffmanReadableChannel,
+ * their compatibility with the streams, and the buffer pool behind them.
+ */
+public class HuffmanChannelTest {
+
+	private static final int BLOCK_SIZE = 1000;
+
+	private static final int[] LENGTHS = { 0, 1, BLOCK_SIZE, 5 * BLOCK_SIZE + 7 };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws IOException {
+		for (int length : LENGTHS) {
+			byte[] data = HuffmanStreamTest.text(length);
+			byte[] compressed = compress(data);
+			assertArrayEquals(data, decompress(compressed));
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (HuffmanReadableChannel in = open(compressed)) {
+				assertEquals(length, in.transferTo(Channels.newChannel(bytes)));
+			}
+			assertArrayEquals(data, bytes.toByteArray());
+		}
+	}
+
+	@Test
+	public void transferFromFile() throws IOException {
+		for (int length : LENGTHS) {
+			byte[] data = HuffmanStreamTest.text(length);
+			File input = folder.newFile();
+			Files.write(input.toPath(), data);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (FileChannel src = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+					HuffmanWritableChannel out = new HuffmanWritableChannel(Channels.newChannel(bytes), BLOCK_SIZE,
+							DirectBufferPool.SHARED)) {
+				// a partial block first, so the mapped blocks start mid-stream
+				out.write(ByteBuffer.wrap(data, 0, Math.min(3, length)));
+				long at = Math.min(3, length);
+				assertEquals(length - at, out.transferFrom(src, at, Long.MAX_VALUE));
+			}
+			assertArrayEquals(data, decompress(bytes.toByteArray()));
+		}
+	}
+
+	@Test
+	public void readsAndWritesStreams() throws IOException {
+		byte[] data = HuffmanStreamTest.text(5 * BLOCK_SIZE + 7);
+		assertArrayEquals(data, HuffmanStreamTest.decompress(compress(data)));
+		assertArrayEquals(data, decompress(HuffmanStreamTest.compress(data)));
+	}
+
+	@Test
+	public void rejectsDamage() throws IOException {
+		byte[] compressed = compress(HuffmanStreamTest.text(3 * BLOCK_SIZE));
+		byte[] flipped = compressed.clone();
+		flipped[4 + 1 + 4 + 20] ^= 0x10;
+		for (byte[] damaged : new byte[][] { Arrays.copyOf(compressed, compressed.length - 5), flipped }) {
+			try {
+				decompress(damaged);
+				fail("Damaged stream decoded");
+			} catch (IOException expected) {
+				// refused
+			}
+		}
+	}
+
+	@Test
+	public void poolRefusesDoubleRelease() {
+		DirectBufferPool pool = new DirectBufferPool(4);
+		ByteBuffer buffer = pool.acquire(100);
+		pool.release(buffer);
+		try {
+			pool.release(buffer);
+			fail("Released twice");
+		} catch (IllegalArgumentException expected) {
+			// refused
+		}
+		try {
+			pool.release(ByteBuffer.allocateDirect(128));
+			fail("Released a buffer from elsewhere");
+		} catch (IllegalArgumentException expected) {
+			// refused
+		}
+		ByteBuffer again = pool.acquire(100);
+		assertSame(buffer, again);
+		assertNotSame(again, pool.acquire(100));
+	}
+
+	@Test
+	public void closeTwiceReleasesOnce() throws IOException {
+		DirectBufferPool pool = new DirectBufferPool(4);
+		HuffmanWritableChannel out = new HuffmanWritableChannel(Channels.newChannel(new ByteArrayOutputStream()),
+				BLOCK_SIZE, pool);
+		out.close();
+		out.close();
+		HuffmanReadableChannel in = new HuffmanReadableChannel(
+				Channels.newChannel(new ByteArrayInputStream(compress(new byte[0]))), pool);
+		in.close();
+		in.close();
+	}
+
+	private static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (HuffmanWritableChannel out = new HuffmanWritableChannel(Channels.newChannel(bytes), BLOCK_SIZE,
+				DirectBufferPool.SHARED)) {
+			out.write(ByteBuffer.wrap(data, 0, data.length / 2));
+			out.write(ByteBuffer.wrap(data, data.length / 2, data.length - data.length / 2));
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] decompress(byte[] compressed) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (HuffmanReadableChannel in = open(compressed)) {
+			ByteBuffer buffer = ByteBuffer.allocate(777);
+			while (in.read(buffer) != -1) {
+				bytes.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static HuffmanReadableChannel open(byte[] compressed) throws IOException {
+		return new HuffmanReadableChannel(Channels.newChannel(new ByteArrayInputStream(compressed)));
+	}
+}
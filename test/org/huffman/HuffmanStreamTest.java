@@ -0,0 +1,121 @@
+package org.huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import org.junit.Test;
+
+/*
+ * Round trips through HuffmanOutputStream and HuffmanInputStream, and the
+ * damage a stream must refuse to decode.
+ */
+public class HuffmanStreamTest {
+
+	private static final int BLOCK_SIZE = 1000;
+
+	// stream header: magic, version, block size
+	private static final int FIRST_FRAME = 4 + 1 + 4;
+
+	@Test
+	public void roundTrip() throws IOException {
+		for (int length : new int[] { 0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, 5 * BLOCK_SIZE + 7 }) {
+			byte[] data = text(length);
+			byte[] compressed = compress(data);
+			assertArrayEquals(data, decompress(compressed));
+			// and a byte at a time, leaving the end-of-stream frame unread
+			try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compressed))) {
+				for (byte b : data) {
+					assertEquals(b & 0xFF, in.read());
+				}
+				assertEquals(-1, in.read());
+			}
+		}
+	}
+
+	@Test
+	public void rejectsTruncation() throws IOException {
+		byte[] compressed = compress(text(3 * BLOCK_SIZE));
+		assertDecompressFails(Arrays.copyOf(compressed, compressed.length - 5));
+		assertDecompressFails(Arrays.copyOf(compressed, FIRST_FRAME - 1));
+	}
+
+	@Test
+	public void rejectsCrcMismatch() throws IOException {
+		byte[] compressed = compress(text(3 * BLOCK_SIZE));
+		compressed[FIRST_FRAME + 20] ^= 0x10;
+		assertDecompressFails(compressed);
+	}
+
+	@Test
+	public void rejectsOversizedFields() throws IOException {
+		// the block size, then the first frame's length
+		for (int at : new int[] { 5, FIRST_FRAME }) {
+			byte[] compressed = compress(text(3 * BLOCK_SIZE));
+			ByteBuffer.wrap(compressed).putInt(at, Integer.MAX_VALUE);
+			assertDecompressFails(compressed);
+		}
+	}
+
+	@Test
+	public void rejectsOversizedSymbolCount() throws IOException {
+		byte[] compressed = compress(text(3 * BLOCK_SIZE));
+		ByteBuffer frame = ByteBuffer.wrap(compressed);
+		int headerBytes = ((frame.getShort(FIRST_FRAME + 8) & 0xFFFF) + 7) >>> 3;
+		frame.putInt(FIRST_FRAME + 8 + 2 + headerBytes, BLOCK_SIZE + 1);
+		CRC32C crc = new CRC32C();
+		crc.update(compressed, FIRST_FRAME + 8, frame.getInt(FIRST_FRAME));
+		frame.putInt(FIRST_FRAME + 4, (int) crc.getValue());
+		assertDecompressFails(compressed);
+	}
+
+	static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (HuffmanOutputStream out = new HuffmanOutputStream(bytes, BLOCK_SIZE)) {
+			out.write(data, 0, data.length / 2);
+			out.write(data, data.length / 2, data.length - data.length / 2);
+		}
+		return bytes.toByteArray();
+	}
+
+	static byte[] decompress(byte[] compressed) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compressed))) {
+			byte[] buffer = new byte[777];
+			for (int n; (n = in.read(buffer)) != -1; ) {
+				bytes.write(buffer, 0, n);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void assertDecompressFails(byte[] compressed) {
+		try {
+			decompress(compressed);
+			fail("Damaged stream decoded");
+		} catch (IOException expected) {
+			// refused
+		}
+	}
+
+	/*
+	 * Skewed, repeatable text, so the code has lengths from short to long.
+	 */
+	static byte[] text(int length) {
+		Random random = new Random(length);
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) ('a' + Math.min(25, (int) Math.abs(random.nextGaussian() * 6)));
+		}
+		return data;
+	}
+}